@@ -1,13 +1,19 @@
 package com.ractoc.fs.games.thehuntison;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import com.forgottenspace.appstates.AiAppState;
 import com.forgottenspace.appstates.DamageAppState;
 import com.forgottenspace.appstates.FlightAppState;
 import com.forgottenspace.appstates.FlightControlAppState;
-import com.forgottenspace.appstates.SceneAppState;
 import com.forgottenspace.appstates.ShootingAppState;
 import com.forgottenspace.es.Entities;
-import com.forgottenspace.es.Entity;
 import com.forgottenspace.es.EntityComponent;
 import com.forgottenspace.es.components.AiComponent;
 import com.forgottenspace.es.components.BoundedEntityComponent;
@@ -24,47 +30,180 @@ import com.forgottenspace.es.components.ShootMainComponent;
 import com.forgottenspace.es.components.SpeedComponent;
 import com.forgottenspace.es.components.StructureComponent;
 import com.forgottenspace.es.componentstorages.InMemoryComponentStorage;
-import com.forgottenspace.parsers.ParserException;
 import com.forgottenspace.parsers.ai.AiScriptLoader;
 import com.forgottenspace.parsers.entitytemplate.EntityTemplate;
 import com.forgottenspace.parsers.entitytemplate.TemplateLoader;
 import com.jme3.app.SimpleApplication;
 import com.jme3.app.state.AppState;
+import com.jme3.asset.plugins.ClasspathLocator;
+import com.jme3.input.InputManager;
 import com.jme3.input.KeyInput;
+import com.jme3.input.dummy.DummyMouseInput;
 import com.jme3.input.controls.KeyTrigger;
 import com.jme3.light.DirectionalLight;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import com.ractoc.fs.games.thehuntison.appstates.EntityCommandAppState;
+import com.ractoc.fs.games.thehuntison.appstates.FixedRateSimulationAppState;
+import com.ractoc.fs.games.thehuntison.appstates.InputRecordingAppState;
+import com.ractoc.fs.games.thehuntison.appstates.InputReplayAppState;
+import com.ractoc.fs.games.thehuntison.appstates.InstancedRenderAppState;
+import com.ractoc.fs.games.thehuntison.appstates.SimulationSleepAppState;
+import com.ractoc.fs.games.thehuntison.appstates.SnapshotAppState;
+import com.ractoc.fs.games.thehuntison.appstates.SpawnQueueAppState;
 import com.ractoc.fs.games.thehuntison.appstates.StarFieldAppState;
+import com.ractoc.fs.games.thehuntison.appstates.StressBenchmarkAppState;
+import com.ractoc.fs.games.thehuntison.appstates.SystemSchedulerAppState;
+import com.ractoc.fs.games.thehuntison.assets.BundleLocator;
+import com.ractoc.fs.games.thehuntison.assets.ModelCache;
+import com.ractoc.fs.games.thehuntison.replay.InputJournal;
+import com.ractoc.fs.games.thehuntison.replay.ReplayTimer;
+import com.ractoc.fs.games.thehuntison.scenario.FixedStepTimer;
+import com.ractoc.fs.games.thehuntison.scenario.StressScenarioBuilder;
+import com.ractoc.fs.games.thehuntison.simulation.EntityCommandQueue;
+import com.ractoc.fs.games.thehuntison.simulation.QueuedKeyInput;
+import com.ractoc.fs.games.thehuntison.snapshot.ComponentCodecs;
+import com.ractoc.fs.games.thehuntison.snapshot.LocationComponentCodec;
+import com.ractoc.fs.games.thehuntison.snapshot.MarkerComponentCodec;
+import com.ractoc.fs.games.thehuntison.snapshot.WorldSnapshotReader;
+import com.ractoc.fs.games.thehuntison.spawn.SceneSpawner;
+import com.ractoc.fs.games.thehuntison.spawn.TemplateSpawner;
 
 public class Main extends SimpleApplication {
 
+    private static final boolean THREADED_SIMULATION = Boolean.getBoolean("simulation.threaded");
+    private static final String SNAPSHOT_DIR = System.getProperty("snapshot.dir");
+    private static final boolean SNAPSHOT_RESTORE = Boolean.getBoolean("snapshot.restore");
+    private static final String ASSET_BUNDLE = System.getProperty("asset.bundle");
+    @SuppressWarnings("unchecked")
+    private static final List<Class<? extends EntityComponent>> COMPONENT_TYPES = Arrays.<Class<? extends EntityComponent>>asList(
+            AiComponent.class,
+            BoundedEntityComponent.class,
+            CanMoveComponent.class,
+            ControlledComponent.class,
+            DamageComponent.class,
+            HasFocusComponent.class,
+            LocationComponent.class,
+            MovementComponent.class,
+            RenderComponent.class,
+            ShootMainComponent.class,
+            SpeedComponent.class,
+            StructureComponent.class,
+            OriginComponent.class);
+    private static final Map<Controls, Integer> KEY_BINDINGS = new LinkedHashMap<>();
     private static Entities entities = Entities.getInstance();
+    private Path recordFile;
+    private InputJournal replayJournal;
+    private int[] stressTriggerCounts;
+    private ComponentCodecs codecs;
+    private ModelCache modelCache;
+    private TemplateSpawner spawner;
+    private SpawnQueueAppState spawnQueue;
+    private InputManager deviceInput;
+    private QueuedKeyInput queuedKeyInput;
+    private final EntityCommandQueue commandQueue = new EntityCommandQueue(4096);
+    private FixedRateSimulationAppState simulation;
+
+    static {
+        KEY_BINDINGS.put(Controls.MOVE_FORWARD, KeyInput.KEY_W);
+        KEY_BINDINGS.put(Controls.MOVE_BACKWARDS, KeyInput.KEY_S);
+        KEY_BINDINGS.put(Controls.STRAFE_LEFT, KeyInput.KEY_Q);
+        KEY_BINDINGS.put(Controls.STRAFE_RIGHT, KeyInput.KEY_E);
+        KEY_BINDINGS.put(Controls.ROTATE_LEFT, KeyInput.KEY_A);
+        KEY_BINDINGS.put(Controls.ROTATE_RIGHT, KeyInput.KEY_D);
+        KEY_BINDINGS.put(Controls.SHOOT_MAIN, KeyInput.KEY_SPACE);
+    }
 
     public Main() {
         super((AppState) null);
     }
 
     public static void main(String[] args) {
+        if (THREADED_SIMULATION && args.length > 0) {
+            // these run modes create entities and count frames on the render thread
+            throw new IllegalArgumentException(args[0] + " can not be combined with -Dsimulation.threaded=true");
+        }
         Main app = new Main();
+        if (args.length == 2 && "--record".equals(args[0])) {
+            app.recordFile = Paths.get(args[1]);
+        } else if (args.length == 2 && "--replay".equals(args[0])) {
+            app.startReplay(InputJournal.load(Paths.get(args[1])));
+            return;
+        } else if (args.length == 2 && "--stress".equals(args[0])) {
+            String[] counts = args[1].split(",");
+            int[] triggerCounts = new int[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                triggerCounts[i] = Integer.parseInt(counts[i].trim());
+            }
+            app.startStressBenchmark(triggerCounts);
+            return;
+        }
         app.start();
     }
 
+    /**
+     * Replay a recorded session headless, as fast as possible.
+     * <p/>
+     * @param journal The recorded session.
+     */
+    public void startReplay(final InputJournal journal) {
+        replayJournal = journal;
+        setTimer(new ReplayTimer(journal));
+        startHeadless();
+    }
+
+    /**
+     * Run the stress benchmark headless, as fast as possible, with a fixed time
+     * per frame.
+     * <p/>
+     * @param triggerCounts The total number of spawn triggers for each stage.
+     */
+    public void startStressBenchmark(final int... triggerCounts) {
+        stressTriggerCounts = triggerCounts;
+        setTimer(new FixedStepTimer(1f / 60f));
+        startHeadless();
+    }
+
+    private void startHeadless() {
+        AppSettings headlessSettings = new AppSettings(true);
+        headlessSettings.setFrameRate(-1);
+        setSettings(headlessSettings);
+        setShowSettings(false);
+        start(JmeContext.Type.Headless);
+    }
+
     @Override
     public void simpleInitApp() {
+        setupAssetBundle();
         rootNode.addLight(new DirectionalLight());
+        modelCache = new ModelCache(assetManager);
+        spawner = new TemplateSpawner(entities);
 
+        setupInput();
         setupKeys();
         setupEntitySystem();
+        boolean restored = restoreSnapshot();
         setupAppStates();
+        setupRunMode();
         setupCamera();
         setupStarField();
-        spawnPlayer();
+        if (!restored) {
+            // a restored snapshot already contains the entities of the scene and the player
+            new SceneSpawner(assetManager, spawner).spawn("Scenes/TriggerTest.j3o");
+            spawnPlayer();
+        }
     }
 
     // disabled for now since there is a bug in the starfield software somewhere
     private void setupStarField() {
-        StarFieldAppState sfas = new StarFieldAppState(entities);
+        StarFieldAppState sfas;
+        if (simulation != null) {
+            sfas = new StarFieldAppState(simulation.getSnapshots());
+        } else {
+            sfas = new StarFieldAppState(entities);
+        }
         sfas.setWidth(settings.getWidth());
         sfas.setHeight(settings.getHeight());
         sfas.setDensity(150);
@@ -87,13 +226,7 @@ public class Main extends SimpleApplication {
     private void spawnPlayer() {
         EntityTemplate template = (EntityTemplate) assetManager.loadAsset("/Templates/Entity/BasicShipTemplate.etpl");
 
-        if (template.getComponents() != null && !template.getComponents().isEmpty()) {
-            EntityComponent[] components = template.getComponentsAsArray();
-            Entity entity = entities.createEntity(components);
-            entities.addComponentsToEntity(entity, new LocationComponent(Vector3f.ZERO, new Quaternion(), new Vector3f(1, 1, 1)), new ControlledComponent(), new BoundedEntityComponent());
-        } else {
-            throw new ParserException("No components for template /Templates/Entity/BasicShipTemplate.etpl");
-        }
+        spawner.spawn(template, new LocationComponent(Vector3f.ZERO, new Quaternion(), new Vector3f(1, 1, 1)), new ControlledComponent(), new BoundedEntityComponent());
     }
 
     @SuppressWarnings("unchecked")
@@ -102,63 +235,105 @@ public class Main extends SimpleApplication {
         assetManager.registerLoader(TemplateLoader.class, "etpl", "ETPL");
         assetManager.registerLoader(AiScriptLoader.class, "ais", "AIS");
 
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          AiComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          BoundedEntityComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          CanMoveComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          ControlledComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          DamageComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          HasFocusComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          LocationComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          MovementComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          RenderComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          ShootMainComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          SpeedComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          StructureComponent.class);
-        entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
-                                                                          OriginComponent.class);
+        for (Class<? extends EntityComponent> componentType : COMPONENT_TYPES) {
+            entities.registerComponentTypesWithComponentStorage(new InMemoryComponentStorage(),
+                                                                              componentType);
+        }
+
+        codecs = new ComponentCodecs();
+        codecs.register(LocationComponent.class, new LocationComponentCodec());
+        codecs.register(ControlledComponent.class, new MarkerComponentCodec<>(ControlledComponent.class));
+        codecs.register(BoundedEntityComponent.class, new MarkerComponentCodec<>(BoundedEntityComponent.class));
+        codecs.registerSerializable(COMPONENT_TYPES.toArray(new Class[COMPONENT_TYPES.size()]));
+    }
+
+    private boolean restoreSnapshot() {
+        return SNAPSHOT_DIR != null && SNAPSHOT_RESTORE
+                && new WorldSnapshotReader(entities, codecs).restoreLatest(Paths.get(SNAPSHOT_DIR));
     }
 
     private void setupAppStates() {
-        SceneAppState sceneAppState = new SceneAppState("Scenes/TriggerTest.j3o");
-        sceneAppState.setPlayerCentric(false);
-        stateManager.attach(sceneAppState);
-        FlightControlAppState flightControlAppState = new FlightControlAppState();
-        stateManager.attach(flightControlAppState);
+        SystemSchedulerAppState scheduler = new SystemSchedulerAppState();
+        scheduler.addSystem(new EntityCommandAppState(entities, commandQueue));
+        spawnQueue = new SpawnQueueAppState(spawner);
+        scheduler.addSystem(spawnQueue);
+        SimulationSleepAppState sleepAppState = new SimulationSleepAppState(entities);
+        scheduler.addSystem(sleepAppState);
+        scheduler.addSystem(new FlightControlAppState());
         FlightAppState flightAppState = new FlightAppState();
         flightAppState.setBounded(true);
-        stateManager.attach(flightAppState);
-        AiAppState triggerAppState = new AiAppState();
-        stateManager.attach(triggerAppState);
-        stateManager.attach(new ShootingAppState());
-        stateManager.attach(new DamageAppState());
+        scheduler.addSystem(flightAppState);
+        scheduler.addSystem(new AiAppState());
+        scheduler.addSystem(new ShootingAppState());
+        scheduler.addSystem(new DamageAppState());
+        if (SNAPSHOT_DIR != null) {
+            SnapshotAppState snapshotAppState = new SnapshotAppState(entities, codecs, Paths.get(SNAPSHOT_DIR));
+            snapshotAppState.setDetachedComponents(sleepAppState);
+            scheduler.addSystem(snapshotAppState);
+        }
+        if (THREADED_SIMULATION) {
+            simulation = new FixedRateSimulationAppState(scheduler, entities, deviceInput, inputManager, queuedKeyInput,
+                                                         KEY_BINDINGS.values());
+            stateManager.attach(simulation);
+            stateManager.attach(new InstancedRenderAppState(simulation.getSnapshots(), modelCache));
+        } else {
+            stateManager.attach(scheduler);
+            stateManager.attach(new InstancedRenderAppState(entities, modelCache));
+        }
+    }
+
+    private void setupAssetBundle() {
+        // only used on request, a bundle left over from an older build would hide changed assets
+        if (ASSET_BUNDLE == null) {
+            return;
+        }
+        if (!Files.isRegularFile(Paths.get(ASSET_BUNDLE))) {
+            throw new IllegalArgumentException("Asset bundle " + ASSET_BUNDLE + " does not exist.");
+        }
+        // the bundle goes before the classpath, which still serves the engine assets
+        assetManager.unregisterLocator("/", ClasspathLocator.class);
+        assetManager.registerLocator(ASSET_BUNDLE, BundleLocator.class);
+        assetManager.registerLocator("/", ClasspathLocator.class);
+    }
+
+    private void setupInput() {
+        if (THREADED_SIMULATION) {
+            // the devices are polled on the render thread, from here on the systems get an InputManager
+            // without devices, which the simulation feeds the key events on its own thread
+            deviceInput = inputManager;
+            inputEnabled = false;
+            inputManager = createQueuedInputManager();
+        } else if (replayJournal != null) {
+            // the replay feeds the recorded key events through the KeyInput the InputManager polls
+            inputManager = createQueuedInputManager();
+        }
+    }
+
+    private InputManager createQueuedInputManager() {
+        queuedKeyInput = new QueuedKeyInput();
+        queuedKeyInput.initialize();
+        DummyMouseInput mouseInput = new DummyMouseInput();
+        mouseInput.initialize();
+        return new InputManager(mouseInput, queuedKeyInput, null, null);
     }
 
     private void setupKeys() {
-        inputManager.addMapping(Controls.MOVE_FORWARD.name(),
-                                new KeyTrigger(KeyInput.KEY_W));
-        inputManager.addMapping(Controls.MOVE_BACKWARDS.name(),
-                                new KeyTrigger(KeyInput.KEY_S));
-        inputManager.addMapping(Controls.STRAFE_LEFT.name(),
-                                new KeyTrigger(KeyInput.KEY_Q));
-        inputManager.addMapping(Controls.STRAFE_RIGHT.name(),
-                                new KeyTrigger(KeyInput.KEY_E));
-        inputManager.addMapping(Controls.ROTATE_LEFT.name(),
-                                new KeyTrigger(KeyInput.KEY_A));
-        inputManager.addMapping(Controls.ROTATE_RIGHT.name(),
-                                new KeyTrigger(KeyInput.KEY_D));
-        inputManager.addMapping(Controls.SHOOT_MAIN.name(),
-                                new KeyTrigger(KeyInput.KEY_SPACE));
+        for (Map.Entry<Controls, Integer> binding : KEY_BINDINGS.entrySet()) {
+            inputManager.addMapping(binding.getKey().name(),
+                                    new KeyTrigger(binding.getValue()));
+        }
+    }
+
+    private void setupRunMode() {
+        if (recordFile != null) {
+            stateManager.attach(new InputRecordingAppState(entities, KEY_BINDINGS, recordFile));
+        } else if (replayJournal != null) {
+            stateManager.attach(new InputReplayAppState(entities, KEY_BINDINGS, queuedKeyInput, replayJournal,
+                                                        (ReplayTimer) timer));
+        } else if (stressTriggerCounts != null) {
+            StressBenchmarkAppState benchmark = new StressBenchmarkAppState(entities, spawnQueue, new StressScenarioBuilder(), stressTriggerCounts);
+            benchmark.setModelCache(modelCache);
+            stateManager.attach(benchmark);
+        }
     }
 }
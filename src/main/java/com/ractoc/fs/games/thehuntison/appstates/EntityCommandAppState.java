@@ -0,0 +1,54 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.forgottenspace.es.Entities;
+import com.jme3.app.state.AbstractAppState;
+import com.ractoc.fs.games.thehuntison.simulation.EntityCommandQueue;
+
+/**
+ * AppState applying the commands offered to an EntityCommandQueue by other
+ * threads. It is scheduled before all other systems, so every update starts
+ * with the changes made off the simulation thread since the previous update.
+ *
+ * When commands were rejected because the queue was full, a warning is logged
+ * once per update with the number of rejected commands.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class EntityCommandAppState extends AbstractAppState {
+
+    private static final Logger LOGGER = Logger.getLogger(EntityCommandAppState.class.getName());
+
+    private final Entities entities;
+    private final EntityCommandQueue queue;
+    private long reportedRejections;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param entities The entities to apply the commands to.
+     * @param queue    The queue to drain.
+     */
+    public EntityCommandAppState(final Entities entities, final EntityCommandQueue queue) {
+        this.entities = entities;
+        this.queue = queue;
+    }
+
+    @Override
+    public void update(final float tpf) {
+        queue.drainTo(entities);
+        long rejections = queue.getRejectedCount();
+        if (rejections > reportedRejections) {
+            LOGGER.log(Level.WARNING, "{0} entity commands rejected, queue capacity {1}, high watermark {2}.",
+                       new Object[] {rejections - reportedRejections, queue.getCapacity(), queue.getHighWatermark()});
+            reportedRejections = rejections;
+        }
+    }
+
+    public EntityCommandQueue getQueue() {
+        return queue;
+    }
+}
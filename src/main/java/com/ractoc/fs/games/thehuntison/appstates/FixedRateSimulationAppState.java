@@ -0,0 +1,245 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.forgottenspace.es.Entities;
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.input.InputManager;
+import com.jme3.input.RawInputListener;
+import com.jme3.input.event.JoyAxisEvent;
+import com.jme3.input.event.JoyButtonEvent;
+import com.jme3.input.event.KeyInputEvent;
+import com.jme3.input.event.MouseButtonEvent;
+import com.jme3.input.event.MouseMotionEvent;
+import com.jme3.input.event.TouchEvent;
+import com.ractoc.fs.games.thehuntison.simulation.LocationSnapshotRecorder;
+import com.ractoc.fs.games.thehuntison.simulation.QueuedKeyInput;
+import com.ractoc.fs.games.thehuntison.simulation.SnapshotBuffer;
+
+/**
+ * AppState which runs the simulation on its own thread, at a fixed rate. The
+ * simulation is an AppState as well, usually the SystemSchedulerAppState. It is
+ * initialized on the render thread, after that its update is only called from
+ * the simulation thread, always with the same tpf. Render and postRender of the
+ * simulation are never called, since the simulation should not touch the scene
+ * graph.
+ *
+ * After every tick, a LocationSnapshot of all entities is published to the
+ * SnapshotBuffer. The render thread should only use these snapshots, it should
+ * not touch the entities directly.
+ *
+ * The input devices can only be polled on the render thread, but the input
+ * listeners of the simulation change the entities. The simulation therefore has
+ * its own InputManager, which its systems register their listeners with. Its
+ * only keyboard is a QueuedKeyInput. The render thread polls the device
+ * InputManager and offers the key events of the simulation keys to the
+ * QueuedKeyInput, instead of dispatching them. At the start of every tick, the
+ * simulation thread updates its own InputManager, which polls the queued
+ * events and dispatches them to the listeners. The render thread never waits
+ * for the simulation, and the input is processed once per tick.
+ *
+ * When the simulation falls more than maxCatchUpTicks behind, the missed ticks
+ * are dropped instead of run back to back.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class FixedRateSimulationAppState extends AbstractAppState implements Runnable {
+
+    private final AppState simulation;
+    private final LocationSnapshotRecorder recorder;
+    private final InputManager deviceInput;
+    private final InputManager simulationInput;
+    private final QueuedKeyInput simulationKeyInput;
+    private final Set<Integer> simulationKeys;
+    private final KeyForwarder keyForwarder = new KeyForwarder();
+    private int ticksPerSecond = 60;
+    private int maxCatchUpTicks = 5;
+    private SnapshotBuffer snapshots;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile RuntimeException failure;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param simulation      The AppState running the simulation.
+     * @param entities        The entities being simulated.
+     * @param deviceInput     The InputManager polling the input devices on the
+     *                        render thread.
+     * @param simulationInput    The InputManager the systems of the
+     *                           simulation register their listeners with.
+     * @param simulationKeyInput The KeyInput of the simulation InputManager.
+     * @param simulationKeys     The key codes handled by the simulation.
+     */
+    public FixedRateSimulationAppState(final AppState simulation, final Entities entities,
+                                       final InputManager deviceInput, final InputManager simulationInput,
+                                       final QueuedKeyInput simulationKeyInput,
+                                       final Collection<Integer> simulationKeys) {
+        this.simulation = simulation;
+        this.recorder = new LocationSnapshotRecorder(entities);
+        this.deviceInput = deviceInput;
+        this.simulationInput = simulationInput;
+        this.simulationKeyInput = simulationKeyInput;
+        this.simulationKeys = new HashSet<>(simulationKeys);
+        this.snapshots = new SnapshotBuffer(getTickNanos());
+    }
+
+    @Override
+    public void initialize(final AppStateManager asm,
+                           final Application app) {
+        super.initialize(asm, app);
+        simulation.initialize(asm, app);
+        deviceInput.addRawInputListener(keyForwarder);
+        running = true;
+        thread = new Thread(this, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void update(final float tpf) {
+        if (failure != null) {
+            throw new IllegalStateException("Simulation stopped.", failure);
+        }
+        deviceInput.update(tpf);
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        deviceInput.removeRawInputListener(keyForwarder);
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        simulation.cleanup();
+    }
+
+    @Override
+    public void run() {
+        long tickNanos = getTickNanos();
+        float tickSeconds = 1f / ticksPerSecond;
+        long nextTick = System.nanoTime();
+        try {
+            while (running) {
+                // dispatches the key events queued by the render thread
+                simulationInput.update(tickSeconds);
+                simulation.update(tickSeconds);
+                snapshots.publish(recorder.record());
+                nextTick += tickNanos;
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else if (-wait > maxCatchUpTicks * tickNanos) {
+                    nextTick = System.nanoTime();
+                }
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    private long getTickNanos() {
+        return TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+    }
+
+    /**
+     * Get the buffer the snapshots are published to.
+     * <p/>
+     * @return The snapshot buffer.
+     */
+    public SnapshotBuffer getSnapshots() {
+        return snapshots;
+    }
+
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * Set the number of simulation ticks per second. This can only be set
+     * before the AppState is initialized.
+     * <p/>
+     * @param ticksPerSecond The number of ticks per second.
+     */
+    public void setTicksPerSecond(final int ticksPerSecond) {
+        if (isInitialized()) {
+            throw new IllegalStateException("The tick rate can not be changed after initialization.");
+        }
+        this.ticksPerSecond = ticksPerSecond;
+        this.snapshots = new SnapshotBuffer(getTickNanos());
+    }
+
+    public int getMaxCatchUpTicks() {
+        return maxCatchUpTicks;
+    }
+
+    /**
+     * Set the number of ticks the simulation is allowed to fall behind before
+     * the missed ticks are dropped.
+     * <p/>
+     * @param maxCatchUpTicks The maximum number of ticks to catch up.
+     */
+    public void setMaxCatchUpTicks(final int maxCatchUpTicks) {
+        this.maxCatchUpTicks = maxCatchUpTicks;
+    }
+
+    /**
+     * Takes the key events of the simulation keys out of the device
+     * InputManager, on the render thread, and queues them on the KeyInput of the
+     * simulation InputManager.
+     */
+    private final class KeyForwarder implements RawInputListener {
+
+        @Override
+        public void onKeyEvent(final KeyInputEvent evt) {
+            if (!simulationKeys.contains(evt.getKeyCode())) {
+                return;
+            }
+            KeyInputEvent forwarded = new KeyInputEvent(evt.getKeyCode(), evt.getKeyChar(),
+                                                        evt.isPressed(), evt.isRepeating());
+            forwarded.setTime(evt.getTime());
+            simulationKeyInput.offer(forwarded);
+            // consumed events are not dispatched to the mappings of the device InputManager
+            evt.setConsumed();
+        }
+
+        @Override
+        public void beginInput() {
+        }
+
+        @Override
+        public void endInput() {
+        }
+
+        @Override
+        public void onJoyAxisEvent(final JoyAxisEvent evt) {
+        }
+
+        @Override
+        public void onJoyButtonEvent(final JoyButtonEvent evt) {
+        }
+
+        @Override
+        public void onMouseMotionEvent(final MouseMotionEvent evt) {
+        }
+
+        @Override
+        public void onMouseButtonEvent(final MouseButtonEvent evt) {
+        }
+
+        @Override
+        public void onTouchEvent(final TouchEvent evt) {
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.forgottenspace.es.ComponentTypeCriteria;
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.EntityResultSet;
+import com.forgottenspace.es.components.Controls;
+import com.forgottenspace.es.components.LocationComponent;
+import com.forgottenspace.es.components.RenderComponent;
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.input.InputManager;
+import com.jme3.input.RawInputListener;
+import com.jme3.input.event.JoyAxisEvent;
+import com.jme3.input.event.JoyButtonEvent;
+import com.jme3.input.event.KeyInputEvent;
+import com.jme3.input.event.MouseButtonEvent;
+import com.jme3.input.event.MouseMotionEvent;
+import com.jme3.input.event.TouchEvent;
+import com.ractoc.fs.games.thehuntison.replay.InputJournalWriter;
+
+/**
+ * AppState recording the play session into an InputJournal. Every tick, the
+ * control actions of the keys bound to a control are recorded, together with
+ * the time per frame and the number of rendered entities spawned during the
+ * tick. The spawn count is used to check whether a replay still follows the
+ * recorded session.
+ *
+ * This AppState should be attached before the first frame, so the recorded
+ * ticks line up with the frames of the replay.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class InputRecordingAppState extends AbstractAppState implements RawInputListener {
+
+    private final Map<Integer, Controls> controlsByKey = new HashMap<>();
+    private final Path file;
+    private final EntityResultSet spawnSet;
+    private InputManager inputManager;
+    private InputJournalWriter writer;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param entities    The entities, used to count the spawns.
+     * @param keyBindings The key code bound to each control.
+     * @param file        The journal file to record to.
+     */
+    public InputRecordingAppState(final Entities entities, final Map<Controls, Integer> keyBindings, final Path file) {
+        this.file = file;
+        this.spawnSet = entities.queryEntities(new ComponentTypeCriteria(RenderComponent.class, LocationComponent.class));
+        for (Map.Entry<Controls, Integer> binding : keyBindings.entrySet()) {
+            controlsByKey.put(binding.getValue(), binding.getKey());
+        }
+    }
+
+    @Override
+    public void initialize(final AppStateManager asm,
+                           final Application app) {
+        super.initialize(asm, app);
+        try {
+            writer = new InputJournalWriter(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create input journal " + file, e);
+        }
+        inputManager = app.getInputManager();
+        inputManager.addRawInputListener(this);
+    }
+
+    @Override
+    public void update(final float tpf) {
+        EntityResultSet.UpdateProcessor processor = spawnSet.getUpdateProcessor();
+        int spawns = processor.getAddedEntities().size();
+        processor.finalizeUpdates();
+        try {
+            writer.endTick(tpf, spawns);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write input journal " + file, e);
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        inputManager.removeRawInputListener(this);
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to close input journal " + file, e);
+        }
+    }
+
+    @Override
+    public void onKeyEvent(final KeyInputEvent evt) {
+        Controls control = controlsByKey.get(evt.getKeyCode());
+        if (control != null && !evt.isRepeating()) {
+            writer.addAction(control, evt.isPressed());
+        }
+    }
+
+    @Override
+    public void beginInput() {
+    }
+
+    @Override
+    public void endInput() {
+    }
+
+    @Override
+    public void onJoyAxisEvent(final JoyAxisEvent evt) {
+    }
+
+    @Override
+    public void onJoyButtonEvent(final JoyButtonEvent evt) {
+    }
+
+    @Override
+    public void onMouseMotionEvent(final MouseMotionEvent evt) {
+    }
+
+    @Override
+    public void onMouseButtonEvent(final MouseButtonEvent evt) {
+    }
+
+    @Override
+    public void onTouchEvent(final TouchEvent evt) {
+    }
+}
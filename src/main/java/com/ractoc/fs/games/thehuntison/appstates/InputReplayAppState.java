@@ -0,0 +1,120 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.forgottenspace.es.ComponentTypeCriteria;
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.EntityResultSet;
+import com.forgottenspace.es.components.Controls;
+import com.forgottenspace.es.components.LocationComponent;
+import com.forgottenspace.es.components.RenderComponent;
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.input.event.KeyInputEvent;
+import com.ractoc.fs.games.thehuntison.replay.InputJournal;
+import com.ractoc.fs.games.thehuntison.replay.ReplayTimer;
+import com.ractoc.fs.games.thehuntison.simulation.QueuedKeyInput;
+
+/**
+ * AppState replaying a recorded InputJournal. The recorded actions are queued
+ * as key events of the bound keys on the KeyInput of the InputManager, while
+ * the ReplayTimer supplies the recorded time per frame. Since the InputManager
+ * polls its KeyInput at the start of the next frame, the actions of a tick are
+ * queued during the update of the tick before it.
+ *
+ * Every tick, the number of spawned entities is compared with the recording.
+ * When the replay is done, a summary is logged and the application is stopped.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class InputReplayAppState extends AbstractAppState {
+
+    private static final Logger LOGGER = Logger.getLogger(InputReplayAppState.class.getName());
+
+    private final InputJournal journal;
+    private final ReplayTimer timer;
+    private final Map<Controls, Integer> keyBindings;
+    private final QueuedKeyInput keyInput;
+    private final EntityResultSet spawnSet;
+    private Application app;
+    private int divergentTicks;
+    private long startTime;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param entities    The entities, used to count the spawns.
+     * @param keyBindings The key code bound to each control.
+     * @param keyInput    The KeyInput of the InputManager, receiving the
+     *                    recorded actions.
+     * @param journal     The journal to replay.
+     * @param timer       The timer of the application, following the journal.
+     */
+    public InputReplayAppState(final Entities entities, final Map<Controls, Integer> keyBindings,
+                               final QueuedKeyInput keyInput, final InputJournal journal,
+                               final ReplayTimer timer) {
+        this.journal = journal;
+        this.timer = timer;
+        this.keyBindings = keyBindings;
+        this.keyInput = keyInput;
+        this.spawnSet = entities.queryEntities(new ComponentTypeCriteria(RenderComponent.class, LocationComponent.class));
+    }
+
+    @Override
+    public void initialize(final AppStateManager asm,
+                           final Application app) {
+        super.initialize(asm, app);
+        this.app = app;
+        this.startTime = System.nanoTime();
+    }
+
+    @Override
+    public void update(final float tpf) {
+        int tick = timer.getTick();
+        EntityResultSet.UpdateProcessor processor = spawnSet.getUpdateProcessor();
+        int spawns = processor.getAddedEntities().size();
+        processor.finalizeUpdates();
+        if (spawns != journal.getSpawnCount(tick)) {
+            divergentTicks++;
+            LOGGER.fine("Tick " + tick + " spawned " + spawns + " entities, recorded " + journal.getSpawnCount(tick));
+        }
+        if (timer.isFinished()) {
+            report();
+            app.stop();
+        } else {
+            feedActions(tick + 1);
+        }
+    }
+
+    private void feedActions(final int tick) {
+        for (byte action : journal.getActions(tick)) {
+            Controls control = InputJournal.decodeControl(action);
+            Integer keyCode = keyBindings.get(control);
+            if (keyCode != null) {
+                keyInput.offer(new KeyInputEvent(keyCode, (char) 0, InputJournal.decodePressed(action), false));
+            }
+        }
+    }
+
+    private void report() {
+        double wallSeconds = (System.nanoTime() - startTime) / (double) TimeUnit.SECONDS.toNanos(1);
+        double gameSeconds = timer.getTimeInSeconds();
+        LOGGER.info(String.format("Replayed %d ticks, %.1fs of play in %.1fs (%.1fx real time), %d divergent ticks.",
+                                  journal.getTickCount(), gameSeconds, wallSeconds, gameSeconds / wallSeconds,
+                                  divergentTicks));
+    }
+
+    /**
+     * Get the number of ticks in which the number of spawned entities differed
+     * from the recording.
+     * <p/>
+     * @return The number of divergent ticks.
+     */
+    public int getDivergentTicks() {
+        return divergentTicks;
+    }
+}
@@ -0,0 +1,347 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.forgottenspace.es.ComponentTypeCriteria;
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.Entity;
+import com.forgottenspace.es.EntityResultSet;
+import com.forgottenspace.es.components.LocationComponent;
+import com.forgottenspace.es.components.RenderComponent;
+import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.material.Material;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.instancing.InstancedNode;
+import com.ractoc.fs.games.thehuntison.assets.ModelCache;
+import com.ractoc.fs.games.thehuntison.simulation.LocationSnapshot;
+import com.ractoc.fs.games.thehuntison.simulation.SnapshotBuffer;
+
+/**
+ * AppState for drawing all entities with a RenderComponent through hardware
+ * instancing. Entities sharing the same j3o model also share the same mesh and
+ * material, so they end up in the same InstancedGeometry. This means the number
+ * of draw calls depends on the number of different models and not on the
+ * number of entities.
+ *
+ * The transform of each instance is copied from the LocationComponent of its
+ * entity every frame. Materials are only switched to instancing when their
+ * material definition supports it. The InstancedNode refuses geometries without
+ * instancing, so models with a material which does not support it are attached
+ * to a plain Node instead. These are drawn with one draw call per entity.
+ *
+ * Models are taken from the ModelCache, so all entities using the same model
+ * share a single loaded copy of it. The model is released again when the entity
+ * is removed.
+ *
+ * Instances further than the cull margin outside the view frustum are detached
+ * from the InstancedNode, so they are no longer part of the instance data sent
+ * to the GPU. They are attached again as soon as they come back into view.
+ *
+ * When the simulation runs on its own thread, the entities are not read
+ * directly. Instead the instances follow the published LocationSnapshots and
+ * the transforms are interpolated between the last two snapshots. In that case
+ * no result set is registered with the entities at all.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class InstancedRenderAppState extends AbstractAppState {
+
+    private static final String USE_INSTANCING = "UseInstancing";
+    private static final float DEFAULT_CULL_MARGIN = 10f;
+
+    private SimpleApplication sApp;
+    private final Entities entities;
+    private final EntityResultSet entSet;
+    private final SnapshotBuffer snapshots;
+    private final InstancedNode instancedNode = new InstancedNode("instancedEntities");
+    private final Node plainNode = new Node("plainEntities");
+    private final ModelCache modelCache;
+    private final Map<Object, Instance> instances = new HashMap<>();
+    private final Transform interpolated = new Transform();
+    private LocationSnapshot lastSnapshot;
+    private final BoundingSphere cullBounds = new BoundingSphere(DEFAULT_CULL_MARGIN, new Vector3f());
+
+    /**
+     * Constructor, registers the query for all renderable entities.
+     * <p/>
+     * @param entities   The entities to render.
+     * @param modelCache The cache supplying the models of the entities.
+     */
+    public InstancedRenderAppState(final Entities entities, final ModelCache modelCache) {
+        this.entities = entities;
+        this.modelCache = modelCache;
+        this.entSet = entities.queryEntities(new ComponentTypeCriteria(RenderComponent.class, LocationComponent.class));
+        this.snapshots = null;
+    }
+
+    /**
+     * Constructor, follows the snapshots published by the simulation thread
+     * instead of reading the entities directly.
+     * <p/>
+     * @param snapshots  The buffer the snapshots are published to.
+     * @param modelCache The cache supplying the models of the entities.
+     */
+    public InstancedRenderAppState(final SnapshotBuffer snapshots, final ModelCache modelCache) {
+        this.entities = null;
+        this.modelCache = modelCache;
+        this.entSet = null;
+        this.snapshots = snapshots;
+    }
+
+    @Override
+    public void initialize(final AppStateManager asm,
+                           final Application app) {
+        super.initialize(asm, app);
+        this.sApp = (SimpleApplication) app;
+        sApp.getRootNode().attachChild(instancedNode);
+        sApp.getRootNode().attachChild(plainNode);
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        sApp.getRootNode().detachChild(instancedNode);
+        sApp.getRootNode().detachChild(plainNode);
+    }
+
+    @Override
+    public void update(final float tpf) {
+        boolean changed;
+        if (snapshots != null) {
+            changed = updateFromSnapshots();
+        } else {
+            changed = updateFromEntities();
+        }
+        changed |= cullInstances();
+        if (changed) {
+            instancedNode.instance();
+        }
+    }
+
+    private boolean updateFromEntities() {
+        EntityResultSet.UpdateProcessor processor = entSet.getUpdateProcessor();
+        boolean changed = false;
+        for (Entity removed : processor.getRemovedEntities()) {
+            changed |= removeInstance(removed);
+        }
+        for (Entity added : processor.getAddedEntities()) {
+            changed |= addInstance(added);
+        }
+        processor.finalizeUpdates();
+        for (Instance instance : instances.values()) {
+            updateTransform(instance);
+        }
+        return changed;
+    }
+
+    private boolean updateFromSnapshots() {
+        // the whole frame uses this one pair, even when a newer one is published meanwhile
+        SnapshotBuffer.Pair pair = snapshots.getPair();
+        LocationSnapshot snapshot = pair.getCurrent();
+        if (snapshot == null) {
+            return false;
+        }
+        boolean changed = false;
+        if (snapshot != lastSnapshot) {
+            changed = syncInstances(snapshot);
+            lastSnapshot = snapshot;
+        }
+        float alpha = pair.getAlpha();
+        for (Map.Entry<Object, Instance> instance : instances.entrySet()) {
+            if (pair.interpolate(instance.getKey(), alpha, interpolated)) {
+                instance.getValue().spatial.setLocalTransform(interpolated);
+            }
+        }
+        return changed;
+    }
+
+    private boolean cullInstances() {
+        Camera cam = sApp.getCamera();
+        // contains() marks the planes a volume is fully inside of and skips them for the next volume,
+        // every instance has to start from all planes and the render pass gets the state back after
+        int planeState = cam.getPlaneState();
+        boolean changed = false;
+        for (Instance instance : instances.values()) {
+            cullBounds.setCenter(instance.spatial.getLocalTranslation());
+            cam.setPlaneState(0);
+            boolean outside = cam.contains(cullBounds) == Camera.FrustumIntersect.Outside;
+            if (outside && !instance.culled) {
+                instance.parent.detachChild(instance.spatial);
+                instance.culled = true;
+                changed |= instance.parent == instancedNode;
+            } else if (!outside && instance.culled) {
+                instance.parent.attachChild(instance.spatial);
+                instance.culled = false;
+                changed |= instance.parent == instancedNode;
+            }
+        }
+        cam.setPlaneState(planeState);
+        return changed;
+    }
+
+    private boolean syncInstances(final LocationSnapshot snapshot) {
+        boolean changed = false;
+        Iterator<Map.Entry<Object, Instance>> it = instances.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Object, Instance> instance = it.next();
+            LocationSnapshot.Entry entry = snapshot.getEntry(instance.getKey());
+            if (entry == null || entry.getJ3o() == null) {
+                it.remove();
+                changed |= detachInstance(instance.getValue());
+            }
+        }
+        for (Map.Entry<Object, LocationSnapshot.Entry> entry : snapshot.getEntries().entrySet()) {
+            if (entry.getValue().getJ3o() != null && !instances.containsKey(entry.getKey())) {
+                changed |= attachInstance(entry.getKey(), null, entry.getValue().getJ3o());
+            }
+        }
+        return changed;
+    }
+
+    private boolean addInstance(final Entity entity) {
+        RenderComponent renderComp = entities.loadComponentForEntity(entity, RenderComponent.class);
+        return attachInstance(entity.getId(), entity, renderComp.getJ3o());
+    }
+
+    /**
+     * Attach the model of the entity.
+     * <p/>
+     * @return True when the model was attached to the InstancedNode.
+     */
+    private boolean attachInstance(final Object entityId, final Entity entity, final String j3o) {
+        Spatial spatial = modelCache.acquire(j3o);
+        Node parent = enableInstancing(spatial) ? instancedNode : plainNode;
+        spatial.setName("entity_" + entityId);
+        instances.put(entityId, new Instance(entity, j3o, spatial, parent));
+        parent.attachChild(spatial);
+        return parent == instancedNode;
+    }
+
+    private boolean removeInstance(final Entity entity) {
+        Instance instance = instances.remove(entity.getId());
+        return instance != null && detachInstance(instance);
+    }
+
+    /**
+     * Detach the model of the entity.
+     * <p/>
+     * @return True when the model was detached from the InstancedNode.
+     */
+    private boolean detachInstance(final Instance instance) {
+        if (!instance.culled) {
+            instance.parent.detachChild(instance.spatial);
+        }
+        modelCache.release(instance.j3o);
+        return !instance.culled && instance.parent == instancedNode;
+    }
+
+    private void updateTransform(final Instance instance) {
+        LocationComponent locComp = entities.loadComponentForEntity(instance.entity, LocationComponent.class);
+        instance.spatial.setLocalTranslation(locComp.getTranslation());
+        instance.spatial.setLocalRotation(locComp.getRotation());
+        instance.spatial.setLocalScale(locComp.getScale());
+    }
+
+    /**
+     * Switch the materials of the model to instancing.
+     * <p/>
+     * @return False when one of the materials does not support instancing, in
+     *         which case the model can not be attached to the InstancedNode.
+     */
+    private boolean enableInstancing(final Spatial model) {
+        final boolean[] supported = {true};
+        model.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(final Geometry geom) {
+                Material mat = geom.getMaterial();
+                if (mat == null || mat.getMaterialDef().getMaterialParam(USE_INSTANCING) == null) {
+                    supported[0] = false;
+                } else if (mat.getParam(USE_INSTANCING) == null) {
+                    // the material is shared by all clones, so it only needs to be set once
+                    mat.setBoolean(USE_INSTANCING, true);
+                }
+            }
+        });
+        return supported[0];
+    }
+
+    /**
+     * Get the number of entities currently being drawn. This includes the
+     * entities culled because they are outside the view.
+     * <p/>
+     * @return The number of instances.
+     */
+    public int getInstanceCount() {
+        return instances.size();
+    }
+
+    /**
+     * Get the number of entities not drawn because they are outside the view.
+     * <p/>
+     * @return The number of culled instances.
+     */
+    public int getCulledCount() {
+        int culled = 0;
+        for (Instance instance : instances.values()) {
+            if (instance.culled) {
+                culled++;
+            }
+        }
+        return culled;
+    }
+
+    public float getCullMargin() {
+        return cullBounds.getRadius();
+    }
+
+    /**
+     * Set how far an entity has to be outside the view before it is detached.
+     * Keeping a margin prevents entities from being detached and attached
+     * again every frame while they move along the edge of the view.
+     * <p/>
+     * @param cullMargin The distance outside the view.
+     */
+    public void setCullMargin(final float cullMargin) {
+        cullBounds.setRadius(cullMargin);
+    }
+
+    /**
+     * Get the number of different models currently loaded. This is the number
+     * of draw calls needed for all the instances, as long as the materials
+     * support instancing.
+     * <p/>
+     * @return The number of loaded models.
+     */
+    public int getModelCount() {
+        return modelCache.getSize();
+    }
+
+    private static final class Instance {
+
+        private final Entity entity;
+        private final String j3o;
+        private final Spatial spatial;
+        private final Node parent;
+        private boolean culled;
+
+        private Instance(final Entity entity, final String j3o, final Spatial spatial, final Node parent) {
+            this.entity = entity;
+            this.j3o = j3o;
+            this.spatial = spatial;
+            this.parent = parent;
+        }
+    }
+}
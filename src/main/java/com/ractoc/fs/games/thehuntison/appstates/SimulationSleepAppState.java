@@ -0,0 +1,238 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.forgottenspace.es.ComponentTypeCriteria;
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.Entity;
+import com.forgottenspace.es.EntityComponent;
+import com.forgottenspace.es.EntityResultSet;
+import com.forgottenspace.es.components.AiComponent;
+import com.forgottenspace.es.components.CanMoveComponent;
+import com.forgottenspace.es.components.ControlledComponent;
+import com.forgottenspace.es.components.LocationComponent;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.math.Vector3f;
+import com.ractoc.fs.games.thehuntison.snapshot.DetachedComponentSource;
+
+/**
+ * AppState putting entities far away from the player to sleep. A sleeping
+ * entity is frozen rather than updated at a lower rate: it has its AiComponent
+ * and CanMoveComponent taken away, so the AI and flight AppStates no longer
+ * spend any time on it. The components are kept
+ * aside and given back, unchanged, as soon as the entity comes within the wake
+ * radius again. The wake radius is somewhat smaller than the sleep radius, so
+ * entities on the border don't keep falling asleep and waking up.
+ *
+ * The distances are only checked every checkInterval seconds, since sleeping
+ * entities don't move and the player only moves a small distance in between.
+ * The player itself never sleeps.
+ *
+ * Since entities are put to sleep by taking components away, this AppState
+ * changes the structure of the entities and has to run on its own, never next
+ * to other systems. The AI and flight AppStates come from the entity system and
+ * process every entity they see at the full rate, so removing the components
+ * is the only way to skip the sleeping entities there. Falling asleep and
+ * waking up do show up as removed and added entities in their result sets, but
+ * only once per crossing of the sleep or wake radius, not every frame.
+ *
+ * The AI state survives the freeze because the AiComponent given back is the
+ * same instance that was taken away. The script and the progress the AI keeps
+ * in the component come back as they were, so a woken entity continues where
+ * it fell asleep. Progress the AiAppState would keep outside the component is
+ * not covered by this. The components kept
+ * aside are exposed as a DetachedComponentSource, so world snapshots still
+ * contain them.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class SimulationSleepAppState extends AbstractAppState implements DetachedComponentSource {
+
+    private final Entities entities;
+    private final EntityResultSet locatedSet;
+    private final EntityResultSet playerSet;
+    private final Map<Object, Entity> located = new LinkedHashMap<>();
+    private final Map<Object, Sleeper> sleepers = new LinkedHashMap<>();
+    private Entity player;
+    private float sleepRadius = 150f;
+    private float wakeRadius = 120f;
+    private float checkInterval = 0.25f;
+    private float sinceCheck;
+
+    /**
+     * Constructor, registers the queries for the located entities and the
+     * player.
+     * <p/>
+     * @param entities The entities.
+     */
+    public SimulationSleepAppState(final Entities entities) {
+        this.entities = entities;
+        this.locatedSet = entities.queryEntities(new ComponentTypeCriteria(LocationComponent.class));
+        this.playerSet = entities.queryEntities(new ComponentTypeCriteria(ControlledComponent.class, LocationComponent.class));
+    }
+
+    @Override
+    public void update(final float tpf) {
+        trackEntities();
+        sinceCheck += tpf;
+        if (player == null || sinceCheck < checkInterval) {
+            return;
+        }
+        sinceCheck = 0;
+        Vector3f playerLocation = entities.loadComponentForEntity(player, LocationComponent.class).getTranslation();
+        float sleepDistanceSquared = sleepRadius * sleepRadius;
+        float wakeDistanceSquared = wakeRadius * wakeRadius;
+        for (Map.Entry<Object, Entity> entity : located.entrySet()) {
+            if (entity.getKey().equals(player.getId())) {
+                continue;
+            }
+            Vector3f location = entities.loadComponentForEntity(entity.getValue(), LocationComponent.class).getTranslation();
+            float distanceSquared = location.distanceSquared(playerLocation);
+            Sleeper sleeper = sleepers.get(entity.getKey());
+            if (sleeper == null && distanceSquared > sleepDistanceSquared) {
+                sleep(entity.getKey(), entity.getValue());
+            } else if (sleeper != null && distanceSquared < wakeDistanceSquared) {
+                wake(entity.getKey(), sleeper);
+            }
+        }
+    }
+
+    private void trackEntities() {
+        EntityResultSet.UpdateProcessor processor = locatedSet.getUpdateProcessor();
+        for (Entity removed : processor.getRemovedEntities()) {
+            located.remove(removed.getId());
+            sleepers.remove(removed.getId());
+        }
+        for (Entity added : processor.getAddedEntities()) {
+            located.put(added.getId(), added);
+        }
+        processor.finalizeUpdates();
+
+        processor = playerSet.getUpdateProcessor();
+        for (Entity removed : processor.getRemovedEntities()) {
+            if (player != null && player.getId().equals(removed.getId())) {
+                player = null;
+            }
+        }
+        List<Entity> added = processor.getAddedEntities();
+        if (!added.isEmpty()) {
+            player = added.get(0);
+        }
+        processor.finalizeUpdates();
+    }
+
+    private void sleep(final Object entityId, final Entity entity) {
+        AiComponent ai = entities.loadComponentForEntity(entity, AiComponent.class);
+        CanMoveComponent canMove = entities.loadComponentForEntity(entity, CanMoveComponent.class);
+        if (ai == null && canMove == null) {
+            // nothing to save on this entity
+            return;
+        }
+        if (ai != null) {
+            entities.removeComponentsFromEntity(entity, AiComponent.class);
+        }
+        if (canMove != null) {
+            entities.removeComponentsFromEntity(entity, CanMoveComponent.class);
+        }
+        sleepers.put(entityId, new Sleeper(entity, ai, canMove));
+    }
+
+    private void wake(final Object entityId, final Sleeper sleeper) {
+        List<EntityComponent> components = new ArrayList<>(2);
+        if (sleeper.ai != null) {
+            components.add(sleeper.ai);
+        }
+        if (sleeper.canMove != null) {
+            components.add(sleeper.canMove);
+        }
+        entities.addComponentsToEntity(sleeper.entity, components.toArray(new EntityComponent[components.size()]));
+        sleepers.remove(entityId);
+    }
+
+    @Override
+    public Set<Object> getDetachedEntityIds() {
+        return Collections.unmodifiableSet(sleepers.keySet());
+    }
+
+    @Override
+    public EntityComponent getDetachedComponent(final Object entityId,
+                                                final Class<? extends EntityComponent> componentType) {
+        Sleeper sleeper = sleepers.get(entityId);
+        if (sleeper == null) {
+            return null;
+        } else if (componentType == AiComponent.class) {
+            return sleeper.ai;
+        } else if (componentType == CanMoveComponent.class) {
+            return sleeper.canMove;
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of entities currently sleeping.
+     * <p/>
+     * @return The number of sleeping entities.
+     */
+    public int getSleepingCount() {
+        return sleepers.size();
+    }
+
+    public float getSleepRadius() {
+        return sleepRadius;
+    }
+
+    /**
+     * Set the distance from the player beyond which entities fall asleep.
+     * <p/>
+     * @param sleepRadius The sleep radius.
+     */
+    public void setSleepRadius(final float sleepRadius) {
+        this.sleepRadius = sleepRadius;
+    }
+
+    public float getWakeRadius() {
+        return wakeRadius;
+    }
+
+    /**
+     * Set the distance from the player within which sleeping entities wake up.
+     * This should be smaller than the sleep radius.
+     * <p/>
+     * @param wakeRadius The wake radius.
+     */
+    public void setWakeRadius(final float wakeRadius) {
+        this.wakeRadius = wakeRadius;
+    }
+
+    public float getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * Set the time between two distance checks.
+     * <p/>
+     * @param checkInterval The check interval in seconds.
+     */
+    public void setCheckInterval(final float checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    private static final class Sleeper {
+
+        private final Entity entity;
+        private final AiComponent ai;
+        private final CanMoveComponent canMove;
+
+        private Sleeper(final Entity entity, final AiComponent ai, final CanMoveComponent canMove) {
+            this.entity = entity;
+            this.ai = ai;
+            this.canMove = canMove;
+        }
+    }
+}
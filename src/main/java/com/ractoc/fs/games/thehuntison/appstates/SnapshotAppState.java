@@ -0,0 +1,181 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.forgottenspace.es.Entities;
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.ractoc.fs.games.thehuntison.snapshot.ComponentCodecs;
+import com.ractoc.fs.games.thehuntison.snapshot.DetachedComponentSource;
+import com.ractoc.fs.games.thehuntison.snapshot.SnapshotException;
+import com.ractoc.fs.games.thehuntison.snapshot.WorldSnapshotWriter;
+
+/**
+ * AppState taking a snapshot of the entities at a fixed interval. Most
+ * snapshots are deltas, every fullInterval snapshots a full snapshot is taken.
+ * After a full snapshot is written, all older snapshot files are removed, so the
+ * directory always contains one full snapshot followed by its deltas.
+ *
+ * Only encoding the snapshot is done in the update, writing it to disk is done
+ * on a background thread. This keeps the cost in the frame limited to copying
+ * the changed components.
+ *
+ * When writing a snapshot fails, the deltas after it can no longer be
+ * restored. These are not written, and the next snapshot taken is a full one,
+ * so the chain on disk never has a gap.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class SnapshotAppState extends AbstractAppState {
+
+    private static final Logger LOGGER = Logger.getLogger(SnapshotAppState.class.getName());
+
+    private final Path directory;
+    private final WorldSnapshotWriter writer;
+    private final String runPrefix = "world-" + System.currentTimeMillis() + "-";
+    private float interval = 5f;
+    private int fullInterval = 12;
+    private float elapsed;
+    private long count;
+    private ExecutorService ioExecutor;
+    private volatile boolean writeFailed;
+    // only used on the io thread
+    private boolean chainBroken;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param entities  The entities to take snapshots of.
+     * @param codecs    The codecs for the component types.
+     * @param directory The directory to write the snapshots to.
+     */
+    public SnapshotAppState(final Entities entities, final ComponentCodecs codecs, final Path directory) {
+        this.directory = directory;
+        this.writer = new WorldSnapshotWriter(entities, codecs);
+    }
+
+    @Override
+    public void initialize(final AppStateManager asm,
+                           final Application app) {
+        super.initialize(asm, app);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new SnapshotException("Unable to create snapshot directory " + directory, e);
+        }
+        ioExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void update(final float tpf) {
+        elapsed += tpf;
+        if (elapsed >= interval) {
+            elapsed = 0;
+            takeSnapshot();
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        ioExecutor.shutdown();
+    }
+
+    /**
+     * Take a snapshot right away.
+     */
+    public void takeSnapshot() {
+        final boolean full = count % fullInterval == 0 || writeFailed;
+        if (full) {
+            writeFailed = false;
+        }
+        final ByteBuffer snapshot = writer.encode(full);
+        final Path file = directory.resolve(String.format("%s%08d%s", runPrefix, count++, WorldSnapshotWriter.EXTENSION));
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (chainBroken && !full) {
+                    return;
+                }
+                try {
+                    WorldSnapshotWriter.write(snapshot, file);
+                    chainBroken = false;
+                    if (full) {
+                        removeOlderSnapshots(file);
+                    }
+                } catch (SnapshotException e) {
+                    LOGGER.log(Level.WARNING, "Unable to write snapshot, the next snapshot will be a full one.", e);
+                    chainBroken = true;
+                    writeFailed = true;
+                }
+            }
+        });
+    }
+
+    private void removeOlderSnapshots(final Path latestFull) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + WorldSnapshotWriter.EXTENSION)) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().compareTo(latestFull.getFileName().toString()) < 0) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to remove old snapshots.", e);
+        }
+    }
+
+    /**
+     * Set the source of the components temporarily taken off their entities,
+     * which should be in the snapshots as well.
+     * <p/>
+     * @param detached The source of the detached components.
+     */
+    public void setDetachedComponents(final DetachedComponentSource detached) {
+        writer.setDetachedComponents(detached);
+    }
+
+    public float getInterval() {
+        return interval;
+    }
+
+    /**
+     * Set the time between two snapshots.
+     * <p/>
+     * @param interval The interval in seconds.
+     */
+    public void setInterval(final float interval) {
+        this.interval = interval;
+    }
+
+    public int getFullInterval() {
+        return fullInterval;
+    }
+
+    /**
+     * Set the number of snapshots after which a full snapshot is taken instead
+     * of a delta.
+     * <p/>
+     * @param fullInterval The number of snapshots between full snapshots.
+     */
+    public void setFullInterval(final int fullInterval) {
+        this.fullInterval = fullInterval;
+    }
+}
@@ -0,0 +1,108 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import com.forgottenspace.es.EntityComponent;
+import com.forgottenspace.parsers.entitytemplate.EntityTemplate;
+import com.jme3.app.state.AbstractAppState;
+import com.ractoc.fs.games.thehuntison.spawn.TemplateSpawner;
+
+/**
+ * AppState spreading large waves of spawns over multiple frames. Waves are
+ * queued as a template plus the overrides for each entity. Every update, at
+ * most spawnsPerFrame entities are created, in the order they were queued.
+ * Entities can only be created one at a time through the entity system, so the
+ * gain is in spreading the cost over the frames, not in cheaper creation.
+ *
+ * Spawning through the queue also keeps the creation of the entities inside the
+ * update of the systems, so callers outside the simulation don't need to touch
+ * the entities themselves.
+ *
+ * All entities created in the same update show up together in the added
+ * entities of the result sets of the other AppStates, so they are all handled in
+ * a single pass.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class SpawnQueueAppState extends AbstractAppState {
+
+    private final TemplateSpawner spawner;
+    private final Deque<Wave> waves = new ArrayDeque<>();
+    private int spawnsPerFrame = 50;
+    private int pending;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param spawner The spawner creating the entities.
+     */
+    public SpawnQueueAppState(final TemplateSpawner spawner) {
+        this.spawner = spawner;
+    }
+
+    /**
+     * Queue a wave of entities.
+     * <p/>
+     * @param template  The template of the entities.
+     * @param overrides The overrides for each entity, one array per entity.
+     */
+    public void enqueue(final EntityTemplate template, final List<EntityComponent[]> overrides) {
+        waves.add(new Wave(template, overrides));
+        pending += overrides.size();
+    }
+
+    @Override
+    public void update(final float tpf) {
+        int budget = spawnsPerFrame;
+        while (budget > 0 && !waves.isEmpty()) {
+            Wave wave = waves.peek();
+            int count = Math.min(budget, wave.overrides.size() - wave.next);
+            for (EntityComponent[] overrides : wave.overrides.subList(wave.next, wave.next + count)) {
+                spawner.spawn(wave.template, overrides);
+            }
+            wave.next += count;
+            budget -= count;
+            pending -= count;
+            if (wave.next == wave.overrides.size()) {
+                waves.poll();
+            }
+        }
+    }
+
+    /**
+     * Get the number of entities queued but not yet created.
+     * <p/>
+     * @return The number of pending spawns.
+     */
+    public int getPendingCount() {
+        return pending;
+    }
+
+    public int getSpawnsPerFrame() {
+        return spawnsPerFrame;
+    }
+
+    /**
+     * Set the maximum number of entities created in a single update.
+     * <p/>
+     * @param spawnsPerFrame The maximum number of spawns per update.
+     */
+    public void setSpawnsPerFrame(final int spawnsPerFrame) {
+        this.spawnsPerFrame = spawnsPerFrame;
+    }
+
+    private static final class Wave {
+
+        private final EntityTemplate template;
+        private final List<EntityComponent[]> overrides;
+        private int next;
+
+        private Wave(final EntityTemplate template, final List<EntityComponent[]> overrides) {
+            this.template = template;
+            this.overrides = overrides;
+        }
+    }
+}
@@ -20,7 +20,9 @@ import com.jme3.material.Material;
 import com.jme3.material.RenderState.BlendMode;
 import com.jme3.material.RenderState.FaceCullMode;
 import com.jme3.math.FastMath;
+import com.jme3.math.Transform;
 import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
 import com.jme3.scene.shape.Quad;
@@ -28,6 +30,8 @@ import com.jme3.texture.Texture;
 import com.jme3.texture.Texture.MagFilter;
 import com.jme3.texture.Texture.MinFilter;
 import com.jme3.texture.Texture.WrapMode;
+import com.ractoc.fs.games.thehuntison.simulation.LocationSnapshot;
+import com.ractoc.fs.games.thehuntison.simulation.SnapshotBuffer;
 import com.ractoc.fs.games.thehuntison.textures.StarField;
 
 /**
@@ -46,6 +50,10 @@ import com.ractoc.fs.games.thehuntison.textures.StarField;
  * layerBaseSize - (layerBaseSize / nrLayers) * layerNumber. layerBaseSpeed +
  * (layerBaseSpeed / nrLayers) * layerNumber.
  *
+ * When the simulation runs on its own thread, the location of the controlled
+ * entity is interpolated from the published snapshots instead of being read
+ * from the entities.
+ *
  * @author ractoc
  * @since 0.1
  */
@@ -68,6 +76,8 @@ public final class StarFieldAppState extends AbstractAppState {
     private final Entities entities;
     private final EntityResultSet entSet;
     private Entity entity;
+    private final SnapshotBuffer snapshots;
+    private final Transform interpolated = new Transform();
 
     /**
      * Constructor which overrides all the defaults.
@@ -86,6 +96,20 @@ public final class StarFieldAppState extends AbstractAppState {
     public StarFieldAppState(final Entities entities) {
         this.entities = entities;
         this.entSet = entities.queryEntities(new ComponentTypeCriteria(RenderComponent.class, LocationComponent.class, ControlledComponent.class));
+        this.snapshots = null;
+    }
+
+    /**
+     * Constructor following the snapshots published by the simulation thread
+     * instead of reading the controlled entity directly. No result set is
+     * registered with the entities.
+     * <p/>
+     * @param snapshots The buffer the snapshots are published to.
+     */
+    public StarFieldAppState(final SnapshotBuffer snapshots) {
+        this.entities = null;
+        this.entSet = null;
+        this.snapshots = snapshots;
     }
 
     @Override
@@ -169,6 +193,10 @@ public final class StarFieldAppState extends AbstractAppState {
 
     @Override
     public void update(final float tpf) {
+        if (snapshots != null) {
+            updateFromSnapshots();
+            return;
+        }
         EntityResultSet.UpdateProcessor processor = entSet.getUpdateProcessor();
         List<Entity> removeEntities = processor.getRemovedEntities();
         List<Entity> addEntities = processor.getAddedEntities();
@@ -192,17 +220,30 @@ public final class StarFieldAppState extends AbstractAppState {
         processor.finalizeUpdates();
         if (entity != null) {
             LocationComponent locComp = entities.loadComponentForEntity(entity, LocationComponent.class);
-            for (int i = 0; i < layers.size(); i++) {
-                moveLayer(i, locComp);
-            }
+            moveLayers(locComp.getTranslation());
+        }
+    }
+
+    private void updateFromSnapshots() {
+        SnapshotBuffer.Pair pair = snapshots.getPair();
+        LocationSnapshot snapshot = pair.getCurrent();
+        if (snapshot != null && snapshot.getControlledId() != null
+                && pair.interpolate(snapshot.getControlledId(), pair.getAlpha(), interpolated)) {
+            moveLayers(interpolated.getTranslation());
+        }
+    }
+
+    private void moveLayers(final Vector3f translation) {
+        for (int i = 0; i < layers.size(); i++) {
+            moveLayer(i, translation);
         }
     }
 
     private void moveLayer(final int layerIndex,
-                           final LocationComponent locComp) {
+                           final Vector3f translation) {
         layers.get(layerIndex).setVector2("posDelta",
-                                          new Vector2f(locComp.getTranslation().x,
-                                                       -locComp.getTranslation().z));
+                                          new Vector2f(translation.x,
+                                                       -translation.z));
         layers.get(layerIndex).setFloat("parallaxScale", (nrLayers - layerIndex)
                 * layerBaseSpeed);
     }
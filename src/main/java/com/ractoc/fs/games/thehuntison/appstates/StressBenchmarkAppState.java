@@ -0,0 +1,214 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.forgottenspace.es.ComponentTypeCriteria;
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.EntityResultSet;
+import com.forgottenspace.es.components.LocationComponent;
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.ractoc.fs.games.thehuntison.assets.ModelCache;
+import com.ractoc.fs.games.thehuntison.scenario.StressScenarioBuilder;
+
+/**
+ * AppState measuring how the game scales with the number of entities. The
+ * benchmark runs in stages. Each stage adds spawn triggers until the number of
+ * triggers for that stage is reached, runs a number of warm up ticks and then
+ * measures a number of ticks. For every stage the number of entities, the ticks
+ * per second, the 99th percentile tick time and the heap used per entity are
+ * logged. When the last stage is done, the application is stopped.
+ *
+ * The triggers are spawned through the SpawnQueueAppState. The warm up of a
+ * stage only starts once all its triggers have been created.
+ *
+ * The tick time is the time between two updates of this AppState, so it
+ * contains the complete frame. The heap is measured, including a garbage
+ * collection, when a stage starts and when its warm up ends. Both are outside
+ * the measured ticks, so the collections never distort the tick times.
+ *
+ * When a ModelCache is set, the cache hits and misses of the stage are logged as
+ * well, showing how many models were served from the cache instead of loaded.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class StressBenchmarkAppState extends AbstractAppState {
+
+    private static final Logger LOGGER = Logger.getLogger(StressBenchmarkAppState.class.getName());
+
+    private final Entities entities;
+    private final SpawnQueueAppState spawnQueue;
+    private final StressScenarioBuilder builder;
+    private final int[] triggerCounts;
+    private final EntityResultSet entitySet;
+    private int warmupTicks = 300;
+    private int measuredTicks = 600;
+    private ModelCache modelCache;
+    private Application app;
+    private long[] tickTimes;
+    private int stage = -1;
+    private int tick;
+    private int placedTriggers;
+    private int entityCount;
+    private int stageEntityCount;
+    private long stageHeap;
+    private long heap;
+    private int heapEntityCount;
+    private long stageCacheHits;
+    private long stageCacheMisses;
+    private long lastTickTime;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param entities      The entities.
+     * @param spawnQueue    The queue spawning the triggers.
+     * @param builder       The builder placing the triggers.
+     * @param triggerCounts The total number of triggers for each stage, in
+     *                      increasing order.
+     */
+    public StressBenchmarkAppState(final Entities entities, final SpawnQueueAppState spawnQueue,
+                                   final StressScenarioBuilder builder, final int... triggerCounts) {
+        for (int triggerCount : triggerCounts) {
+            if (triggerCount < 0) {
+                throw new IllegalArgumentException("Trigger counts can not be negative: " + Arrays.toString(triggerCounts));
+            }
+        }
+        this.entities = entities;
+        this.spawnQueue = spawnQueue;
+        this.builder = builder;
+        this.triggerCounts = triggerCounts.clone();
+        this.entitySet = entities.queryEntities(new ComponentTypeCriteria(LocationComponent.class));
+    }
+
+    @Override
+    public void initialize(final AppStateManager asm,
+                           final Application app) {
+        super.initialize(asm, app);
+        this.app = app;
+        this.tickTimes = new long[measuredTicks];
+    }
+
+    @Override
+    public void update(final float tpf) {
+        long now = System.nanoTime();
+        countEntities();
+        if (stage < 0) {
+            startStage(0);
+        } else if (spawnQueue.getPendingCount() == 0) {
+            // ticks only count once all triggers of the stage are placed
+            if (tick > warmupTicks) {
+                tickTimes[tick - warmupTicks - 1] = now - lastTickTime;
+            } else if (tick == warmupTicks) {
+                // all entities of the stage exist, measure the heap before measuring the ticks
+                heap = usedHeap();
+                heapEntityCount = entityCount;
+                now = System.nanoTime();
+            }
+            tick++;
+            if (tick == warmupTicks + measuredTicks + 1) {
+                finishStage();
+                if (stage + 1 < triggerCounts.length) {
+                    startStage(stage + 1);
+                } else {
+                    app.stop();
+                }
+            }
+        }
+        lastTickTime = now;
+    }
+
+    private void countEntities() {
+        EntityResultSet.UpdateProcessor processor = entitySet.getUpdateProcessor();
+        entityCount += processor.getAddedEntities().size() - processor.getRemovedEntities().size();
+        processor.finalizeUpdates();
+    }
+
+    private void startStage(final int newStage) {
+        stage = newStage;
+        tick = 0;
+        builder.setSeed(builder.getSeed() + 1);
+        builder.build(app.getAssetManager(), spawnQueue, triggerCounts[stage] - placedTriggers);
+        placedTriggers = triggerCounts[stage];
+        stageHeap = usedHeap();
+        stageEntityCount = entityCount;
+        if (modelCache != null) {
+            stageCacheHits = modelCache.getHits();
+            stageCacheMisses = modelCache.getMisses();
+        }
+    }
+
+    private void finishStage() {
+        long[] sorted = tickTimes.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long tickTime : sorted) {
+            total += tickTime;
+        }
+        long p99 = sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+        double ticksPerSecond = sorted.length / (total / (double) TimeUnit.SECONDS.toNanos(1));
+        long heapPerEntity = heapEntityCount == 0 ? 0 : heap / heapEntityCount;
+        long growthPerEntity = heapEntityCount == stageEntityCount ? 0 : (heap - stageHeap) / (heapEntityCount - stageEntityCount);
+        LOGGER.info(String.format("triggers=%d entities=%d ticks/s=%.1f p99=%.2fms heap=%dMB heap/entity=%dB growth/entity=%dB",
+                                  placedTriggers, entityCount, ticksPerSecond, p99 / 1000000.0,
+                                  heap / (1024 * 1024), heapPerEntity, growthPerEntity));
+        if (modelCache != null) {
+            LOGGER.info(String.format("model cache hits=%d misses=%d cached=%d",
+                                      modelCache.getHits() - stageCacheHits,
+                                      modelCache.getMisses() - stageCacheMisses, modelCache.getSize()));
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Set the ModelCache whose hits and misses are logged for every stage.
+     * <p/>
+     * @param modelCache The ModelCache used by the renderer.
+     */
+    public void setModelCache(final ModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
+    public int getWarmupTicks() {
+        return warmupTicks;
+    }
+
+    /**
+     * Set the number of ticks run after adding the triggers, before measuring.
+     * This can only be set before the AppState is initialized.
+     * <p/>
+     * @param warmupTicks The number of warm up ticks.
+     */
+    public void setWarmupTicks(final int warmupTicks) {
+        if (isInitialized()) {
+            throw new IllegalStateException("Warm up ticks can only be set before the benchmark is initialized.");
+        }
+        this.warmupTicks = warmupTicks;
+    }
+
+    public int getMeasuredTicks() {
+        return measuredTicks;
+    }
+
+    /**
+     * Set the number of ticks measured per stage. This can only be set before
+     * the AppState is initialized.
+     * <p/>
+     * @param measuredTicks The number of measured ticks.
+     */
+    public void setMeasuredTicks(final int measuredTicks) {
+        if (isInitialized()) {
+            throw new IllegalStateException("Measured ticks can only be set before the benchmark is initialized.");
+        }
+        this.measuredTicks = measuredTicks;
+    }
+}
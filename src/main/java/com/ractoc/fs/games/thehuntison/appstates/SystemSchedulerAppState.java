@@ -0,0 +1,116 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.renderer.RenderManager;
+
+/**
+ * AppState which runs a number of other AppStates, the systems, in the order
+ * they were added, on the thread calling the update. This puts the order of the
+ * systems in a single place, so the complete simulation can be run as one
+ * AppState, either by the AppStateManager or by the FixedRateSimulationAppState.
+ *
+ * The systems are not run concurrently. Every change to the entities goes
+ * through the one shared Entities instance, which also updates the result sets
+ * of all systems, and the systems of the entity system all change the entities.
+ * Changes from other threads go through an EntityCommandQueue instead, which is
+ * drained by one of the systems.
+ *
+ * The systems are owned by this AppState. They should not be attached to the
+ * AppStateManager themselves.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class SystemSchedulerAppState extends AbstractAppState {
+
+    private final List<AppState> systems = new ArrayList<>();
+
+    /**
+     * Add a system. The systems are updated in the order they are added.
+     * Systems can only be added before the scheduler is initialized.
+     * <p/>
+     * @param system The system to add.
+     */
+    public void addSystem(final AppState system) {
+        if (isInitialized()) {
+            throw new IllegalStateException("Systems can not be added after initialization.");
+        }
+        systems.add(system);
+    }
+
+    @Override
+    public void initialize(final AppStateManager asm,
+                           final Application app) {
+        super.initialize(asm, app);
+        for (AppState system : systems) {
+            system.initialize(asm, app);
+        }
+    }
+
+    @Override
+    public void stateAttached(final AppStateManager stateManager) {
+        super.stateAttached(stateManager);
+        for (AppState system : systems) {
+            system.stateAttached(stateManager);
+        }
+    }
+
+    @Override
+    public void stateDetached(final AppStateManager stateManager) {
+        super.stateDetached(stateManager);
+        for (AppState system : systems) {
+            system.stateDetached(stateManager);
+        }
+    }
+
+    @Override
+    public void update(final float tpf) {
+        for (AppState system : systems) {
+            if (system.isEnabled()) {
+                system.update(tpf);
+            }
+        }
+    }
+
+    @Override
+    public void render(final RenderManager rm) {
+        for (AppState system : systems) {
+            if (system.isEnabled()) {
+                system.render(rm);
+            }
+        }
+    }
+
+    @Override
+    public void postRender() {
+        for (AppState system : systems) {
+            if (system.isEnabled()) {
+                system.postRender();
+            }
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        for (AppState system : systems) {
+            system.cleanup();
+        }
+    }
+
+    /**
+     * Get the systems, in the order they are updated.
+     * <p/>
+     * @return The systems.
+     */
+    public List<AppState> getSystems() {
+        return Collections.unmodifiableList(systems);
+    }
+}
@@ -0,0 +1,93 @@
+package com.ractoc.fs.games.thehuntison.assets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A memory mapped asset bundle, as written by the AssetBundleBuilder. The
+ * format is:
+ * <pre>
+ * int    magic "FSAB"
+ * short  version
+ * int    number of assets
+ * per asset:
+ *   short + bytes  asset name, UTF-8, relative to the resources root
+ *   int            offset of the data, from the start of the bundle
+ *   int            length of the data
+ * the data of all assets
+ * </pre>
+ *
+ * Only the index is read when the bundle is opened. The data of an asset is
+ * loaded from disk by the operating system when it is read.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class AssetBundle {
+
+    static final int MAGIC = 0x46534142;
+    static final short VERSION = 1;
+
+    private final ByteBuffer data;
+    private final Map<String, int[]> index = new HashMap<>();
+
+    private AssetBundle(final ByteBuffer data) {
+        this.data = data;
+        ByteBuffer buffer = data.duplicate();
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not an asset bundle.");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported asset bundle version " + version);
+        }
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            index.put(new String(name, StandardCharsets.UTF_8), new int[] {buffer.getInt(), buffer.getInt()});
+        }
+    }
+
+    /**
+     * Open a bundle by memory mapping the file.
+     * <p/>
+     * @param file The bundle file.
+     * @return The bundle.
+     * @throws IOException When the file could not be mapped.
+     */
+    public static AssetBundle open(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new AssetBundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Get the data of an asset.
+     * <p/>
+     * @param name The name of the asset, with or without a leading slash.
+     * @return A read only buffer containing the data, or null when the bundle
+     *         does not contain the asset.
+     */
+    public ByteBuffer get(final String name) {
+        int[] entry = index.get(name.startsWith("/") ? name.substring(1) : name);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer asset = data.asReadOnlyBuffer();
+        asset.position(entry[0]).limit(entry[0] + entry[1]);
+        return asset.slice();
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+}
@@ -0,0 +1,105 @@
+package com.ractoc.fs.games.thehuntison.assets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Build step packing all files in the resources directory into a single
+ * AssetBundle. It is run by Maven after the classes are compiled when the
+ * asset-bundle profile is active (mvn package -Passet-bundle):
+ * <pre>
+ * AssetBundleBuilder &lt;resources directory&gt; &lt;bundle file&gt;
+ * </pre>
+ *
+ * The assets are written in the order of their names, so building the same
+ * resources twice results in the same bundle.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class AssetBundleBuilder {
+
+    private AssetBundleBuilder() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: AssetBundleBuilder <resources directory> <bundle file>");
+        }
+        Path output = Paths.get(args[1]);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        build(Paths.get(args[0]), output);
+    }
+
+    /**
+     * Pack all files in the resources directory into a bundle.
+     * <p/>
+     * @param resources The resources directory.
+     * @param output    The bundle file, it is replaced when it exists.
+     * @throws IOException When a resource could not be read or the bundle
+     *                     could not be written.
+     */
+    public static void build(final Path resources, final Path output) throws IOException {
+        List<Path> files = listFiles(resources);
+        List<byte[]> names = new ArrayList<>(files.size());
+        int indexSize = 10;
+        for (Path file : files) {
+            byte[] name = resources.relativize(file).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            indexSize += name.length + 10;
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(indexSize);
+        index.putInt(AssetBundle.MAGIC).putShort(AssetBundle.VERSION).putInt(files.size());
+        long offset = indexSize;
+        for (int i = 0; i < files.size(); i++) {
+            long size = Files.size(files.get(i));
+            if (offset + size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Asset bundle larger than 2GB.");
+            }
+            index.putShort((short) names.get(i).length).put(names.get(i)).putInt((int) offset).putInt((int) size);
+            offset += size;
+        }
+        index.flip();
+
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+            for (Path file : files) {
+                ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+        }
+    }
+
+    private static List<Path> listFiles(final Path resources) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        Files.walkFileTree(resources, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files);
+        return files;
+    }
+}
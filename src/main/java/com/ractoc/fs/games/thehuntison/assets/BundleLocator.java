@@ -0,0 +1,88 @@
+package com.ractoc.fs.games.thehuntison.assets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetLoadException;
+import com.jme3.asset.AssetLocator;
+import com.jme3.asset.AssetManager;
+
+/**
+ * AssetLocator serving the assets from an AssetBundle. The root path is the
+ * path of the bundle file. Assets not in the bundle are left to the other
+ * locators.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class BundleLocator implements AssetLocator {
+
+    private AssetBundle bundle;
+
+    @Override
+    public void setRootPath(final String rootPath) {
+        try {
+            bundle = AssetBundle.open(Paths.get(rootPath));
+        } catch (IOException e) {
+            throw new AssetLoadException("Unable to open asset bundle " + rootPath, e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public AssetInfo locate(final AssetManager manager, final AssetKey key) {
+        final ByteBuffer data = bundle.get(key.getName());
+        if (data == null) {
+            return null;
+        }
+        return new AssetInfo(manager, key) {
+            @Override
+            public InputStream openStream() {
+                return new ByteBufferInputStream(data.duplicate());
+            }
+        };
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
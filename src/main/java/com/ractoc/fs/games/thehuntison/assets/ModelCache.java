@@ -0,0 +1,126 @@
+package com.ractoc.fs.games.thehuntison.assets;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.ModelKey;
+import com.jme3.scene.Spatial;
+
+/**
+ * Reference counted cache for the models used by the RenderComponent. The first
+ * time a model is acquired, it is loaded through the AssetManager. After that,
+ * every acquire returns a lightweight clone of the cached model. These clones
+ * share the meshes and materials of the cached model, so the GPU buffers are
+ * only uploaded once, no matter how many entities use the model.
+ *
+ * Every acquire needs to be matched by a release. When the last clone of a model
+ * is released, the model is removed from this cache and from the cache of the
+ * AssetManager.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class ModelCache {
+
+    private final AssetManager assetManager;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param assetManager The AssetManager used to load the models.
+     */
+    public ModelCache(final AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    /**
+     * Get a clone of the model. The clone shares its meshes and materials with
+     * all other clones of the same model.
+     * <p/>
+     * @param j3o The path of the model.
+     * @return A clone of the model.
+     */
+    public Spatial acquire(final String j3o) {
+        Entry entry = entries.get(j3o);
+        if (entry == null) {
+            misses++;
+            entry = new Entry(assetManager.loadModel(j3o));
+            entries.put(j3o, entry);
+        } else {
+            hits++;
+        }
+        entry.references++;
+        return entry.model.clone(false);
+    }
+
+    /**
+     * Release a clone previously acquired. When this was the last clone of
+     * the model, the model is removed from the cache.
+     * <p/>
+     * @param j3o The path of the model.
+     */
+    public void release(final String j3o) {
+        Entry entry = entries.get(j3o);
+        if (entry == null) {
+            throw new IllegalStateException("Model " + j3o + " was never acquired.");
+        }
+        entry.references--;
+        if (entry.references == 0) {
+            entries.remove(j3o);
+            assetManager.deleteFromCache(new ModelKey(j3o));
+        }
+    }
+
+    /**
+     * Get the number of acquires which were served from the cache.
+     * <p/>
+     * @return The number of cache hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of acquires which had to load the model through the
+     * AssetManager.
+     * <p/>
+     * @return The number of cache misses.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of models currently in the cache.
+     * <p/>
+     * @return The number of cached models.
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of clones of the model that have not yet been released.
+     * <p/>
+     * @param j3o The path of the model.
+     * @return The number of references to the model.
+     */
+    public int getReferenceCount(final String j3o) {
+        Entry entry = entries.get(j3o);
+        return entry == null ? 0 : entry.references;
+    }
+
+    private static final class Entry {
+
+        private final Spatial model;
+        private int references;
+
+        private Entry(final Spatial model) {
+            this.model = model;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.ractoc.fs.games.thehuntison.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.forgottenspace.es.components.Controls;
+
+/**
+ * A recorded play session, loaded in memory. The journal contains a record for
+ * every tick, with the time per frame, the control actions pressed and
+ * released during that tick, and the number of entities spawned in it.
+ *
+ * The binary format is:
+ * <pre>
+ * int    magic "FSIJ"
+ * short  version
+ * per tick:
+ *   float  time per frame
+ *   byte   number of actions
+ *   per action: byte, Controls ordinal shifted left by 1, pressed in bit 0
+ *   short  number of entities spawned
+ * </pre>
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class InputJournal {
+
+    static final int MAGIC = 0x46534A49;
+    static final short VERSION = 1;
+
+    private final List<Tick> ticks;
+
+    private InputJournal(final List<Tick> ticks) {
+        this.ticks = ticks;
+    }
+
+    /**
+     * Load a journal from a file. The file is memory mapped while reading.
+     * <p/>
+     * @param file The journal file.
+     * @return The journal.
+     */
+    public static InputJournal load(final Path file) {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read input journal " + file, e);
+        }
+        if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            throw new IllegalArgumentException("Unsupported input journal " + file);
+        }
+        List<Tick> ticks = new ArrayList<>();
+        // a tick cut off by a crash during the write is ignored
+        while (buffer.remaining() >= 7) {
+            float tpf = buffer.getFloat();
+            byte[] actions = new byte[buffer.get() & 0xFF];
+            if (buffer.remaining() < actions.length + 2) {
+                break;
+            }
+            buffer.get(actions);
+            ticks.add(new Tick(tpf, actions, buffer.getShort()));
+        }
+        return new InputJournal(ticks);
+    }
+
+    static byte encodeAction(final Controls control, final boolean pressed) {
+        return (byte) (control.ordinal() << 1 | (pressed ? 1 : 0));
+    }
+
+    /**
+     * Get the control of an encoded action.
+     * <p/>
+     * @param action The encoded action.
+     * @return The control.
+     */
+    public static Controls decodeControl(final byte action) {
+        return Controls.values()[(action & 0xFF) >> 1];
+    }
+
+    /**
+     * Check whether an encoded action is a press or a release.
+     * <p/>
+     * @param action The encoded action.
+     * @return True when pressed, false when released.
+     */
+    public static boolean decodePressed(final byte action) {
+        return (action & 1) == 1;
+    }
+
+    public int getTickCount() {
+        return ticks.size();
+    }
+
+    public float getTimePerFrame(final int tick) {
+        return ticks.get(tick).tpf;
+    }
+
+    /**
+     * Get the actions of the tick.
+     * <p/>
+     * @param tick The tick.
+     * @return The encoded actions, in the order they occurred.
+     */
+    public byte[] getActions(final int tick) {
+        return ticks.get(tick).actions;
+    }
+
+    public int getSpawnCount(final int tick) {
+        return ticks.get(tick).spawns;
+    }
+
+    private static final class Tick {
+
+        private final float tpf;
+        private final byte[] actions;
+        private final short spawns;
+
+        private Tick(final float tpf, final byte[] actions, final short spawns) {
+            this.tpf = tpf;
+            this.actions = actions;
+            this.spawns = spawns;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ractoc.fs.games.thehuntison.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.forgottenspace.es.components.Controls;
+
+/**
+ * Writes an InputJournal, one tick at a time. Every tick is encoded into a
+ * buffer and written to the file channel when it is finished. Once a tick is
+ * handed to the operating system, it survives a crash of the game, so a
+ * journal of a crashed session replays up to the last frame before the crash.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class InputJournalWriter implements Closeable {
+
+    private static final int MAX_TICK_SIZE = 4 + 1 + 255 + 2;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_TICK_SIZE + 6);
+    private final byte[] actions = new byte[255];
+    private int nrActions;
+
+    /**
+     * Constructor, creates the journal file.
+     * <p/>
+     * @param file The journal file, it is replaced when it exists.
+     * @throws IOException When the file can not be created.
+     */
+    public InputJournalWriter(final Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(InputJournal.MAGIC).putShort(InputJournal.VERSION);
+    }
+
+    /**
+     * Add an action to the current tick. Actions beyond 255 in a single tick
+     * are dropped.
+     * <p/>
+     * @param control The control.
+     * @param pressed True when pressed, false when released.
+     */
+    public void addAction(final Controls control, final boolean pressed) {
+        if (nrActions < actions.length) {
+            actions[nrActions++] = InputJournal.encodeAction(control, pressed);
+        }
+    }
+
+    /**
+     * Finish the current tick and write it to the journal file.
+     * <p/>
+     * @param tpf    The time per frame of the tick.
+     * @param spawns The number of entities spawned during the tick.
+     * @throws IOException When the journal can not be written.
+     */
+    public void endTick(final float tpf, final int spawns) throws IOException {
+        buffer.putFloat(tpf).put((byte) nrActions).put(actions, 0, nrActions);
+        buffer.putShort((short) Math.min(spawns, Short.MAX_VALUE));
+        nrActions = 0;
+        flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
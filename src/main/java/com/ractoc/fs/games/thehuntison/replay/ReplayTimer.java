@@ -0,0 +1,92 @@
+package com.ractoc.fs.games.thehuntison.replay;
+
+import com.jme3.system.Timer;
+
+/**
+ * Timer following the time per frame recorded in an InputJournal instead of
+ * the wall clock. This makes the replay independent of how fast the frames are
+ * actually processed, so it can run faster than real time.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class ReplayTimer extends Timer {
+
+    private static final long RESOLUTION = 1000000000L;
+    private static final float DEFAULT_TIME_PER_FRAME = 1f / 60f;
+
+    private final InputJournal journal;
+    private int tick = -1;
+    private long time;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param journal The journal to take the time per frame from.
+     */
+    public ReplayTimer(final InputJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public long getResolution() {
+        return RESOLUTION;
+    }
+
+    @Override
+    public float getFrameRate() {
+        float tpf = getTimePerFrame();
+        // no frame replayed yet, or a recorded frame without time
+        if (tpf <= 0f) {
+            return 0f;
+        }
+        return 1f / tpf;
+    }
+
+    @Override
+    public float getTimePerFrame() {
+        if (tick < 0) {
+            return 0f;
+        }
+        if (journal.getTickCount() == 0) {
+            // nothing recorded, or the only tick was cut off
+            return DEFAULT_TIME_PER_FRAME;
+        }
+        return journal.getTimePerFrame(Math.min(tick, journal.getTickCount() - 1));
+    }
+
+    @Override
+    public void update() {
+        tick++;
+        time += (long) (getTimePerFrame() * RESOLUTION);
+    }
+
+    @Override
+    public void reset() {
+        tick = -1;
+        time = 0;
+    }
+
+    /**
+     * Get the tick currently being replayed.
+     * <p/>
+     * @return The tick, -1 before the first update.
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * Check whether all ticks in the journal have been replayed.
+     * <p/>
+     * @return True when the replay is done.
+     */
+    public boolean isFinished() {
+        return tick >= journal.getTickCount() - 1;
+    }
+}
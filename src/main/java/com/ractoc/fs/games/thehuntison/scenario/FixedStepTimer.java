@@ -0,0 +1,58 @@
+package com.ractoc.fs.games.thehuntison.scenario;
+
+import com.jme3.system.Timer;
+
+/**
+ * Timer advancing the same amount of game time every frame, no matter how long
+ * the frame actually took. Benchmarks use it so the amount of simulated work
+ * per tick does not depend on the speed of the machine.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class FixedStepTimer extends Timer {
+
+    private static final long RESOLUTION = 1000000000L;
+
+    private final float tpf;
+    private long time;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param tpf The time per frame, in seconds.
+     */
+    public FixedStepTimer(final float tpf) {
+        this.tpf = tpf;
+    }
+
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public long getResolution() {
+        return RESOLUTION;
+    }
+
+    @Override
+    public float getFrameRate() {
+        return 1f / tpf;
+    }
+
+    @Override
+    public float getTimePerFrame() {
+        return tpf;
+    }
+
+    @Override
+    public void update() {
+        time += (long) (tpf * RESOLUTION);
+    }
+
+    @Override
+    public void reset() {
+        time = 0;
+    }
+}
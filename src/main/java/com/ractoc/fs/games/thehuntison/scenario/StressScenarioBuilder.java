@@ -0,0 +1,100 @@
+package com.ractoc.fs.games.thehuntison.scenario;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.forgottenspace.es.EntityComponent;
+import com.forgottenspace.es.components.LocationComponent;
+import com.forgottenspace.parsers.entitytemplate.EntityTemplate;
+import com.jme3.asset.AssetManager;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.ractoc.fs.games.thehuntison.appstates.SpawnQueueAppState;
+
+/**
+ * Builds a stress scenario by placing a number of spawn triggers around the
+ * origin. By default the triggers use the TriggerBasicShipSpawn template and
+ * are placed within the range of its spawn script, so every trigger keeps
+ * spawning ships as long as the player stays near the origin.
+ *
+ * The triggers are spread evenly over a disc, using a seeded random generator
+ * so the same parameters always result in the same scenario. The triggers are
+ * queued on the SpawnQueueAppState, so they are created spread over the next
+ * frames.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class StressScenarioBuilder {
+
+    private String template = "/Templates/Entity/TriggerBasicShipSpawn.etpl";
+    private float radius = 4f;
+    private long seed = 42L;
+
+    /**
+     * Place the triggers.
+     * <p/>
+     * @param assetManager The AssetManager to load the template with.
+     * @param spawnQueue   The queue to spawn the triggers through.
+     * @param nrTriggers   The number of triggers to place.
+     */
+    public void build(final AssetManager assetManager, final SpawnQueueAppState spawnQueue, final int nrTriggers) {
+        EntityTemplate triggerTemplate = (EntityTemplate) assetManager.loadAsset(template);
+        Random random = new Random(seed);
+        List<EntityComponent[]> overrides = new ArrayList<>(nrTriggers);
+        for (int i = 0; i < nrTriggers; i++) {
+            overrides.add(new EntityComponent[] {
+                new LocationComponent(randomLocation(random), new Quaternion(), new Vector3f(1, 1, 1))
+            });
+        }
+        spawnQueue.enqueue(triggerTemplate, overrides);
+    }
+
+    private Vector3f randomLocation(final Random random) {
+        // the square root keeps the triggers evenly spread over the disc
+        float distance = radius * FastMath.sqrt(random.nextFloat());
+        float angle = FastMath.TWO_PI * random.nextFloat();
+        return new Vector3f(distance * FastMath.cos(angle), 0, distance * FastMath.sin(angle));
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Set the template used for the triggers.
+     * <p/>
+     * @param template The path of the entity template.
+     */
+    public void setTemplate(final String template) {
+        this.template = template;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    /**
+     * Set the radius of the disc the triggers are placed on.
+     * <p/>
+     * @param radius The radius.
+     */
+    public void setRadius(final float radius) {
+        this.radius = radius;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Set the seed for placing the triggers.
+     * <p/>
+     * @param seed The seed.
+     */
+    public void setSeed(final long seed) {
+        this.seed = seed;
+    }
+}
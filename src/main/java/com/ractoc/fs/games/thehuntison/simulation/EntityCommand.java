@@ -0,0 +1,20 @@
+package com.ractoc.fs.games.thehuntison.simulation;
+
+import com.forgottenspace.es.Entities;
+
+/**
+ * A change to the entities which is not applied directly, but buffered until
+ * the entities can be safely changed.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public interface EntityCommand {
+
+    /**
+     * Apply the change to the entities.
+     * <p/>
+     * @param entities The entities to change.
+     */
+    void apply(Entities entities);
+}
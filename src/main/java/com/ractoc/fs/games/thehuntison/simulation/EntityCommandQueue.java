@@ -0,0 +1,203 @@
+package com.ractoc.fs.games.thehuntison.simulation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.Entity;
+import com.forgottenspace.es.EntityComponent;
+import com.forgottenspace.es.components.LocationComponent;
+
+/**
+ * Bounded queue of EntityCommands, filled from any number of threads and
+ * drained by the single thread owning the entities. The queue is lock free:
+ * producers claim a slot with a compare and set on the tail, the consumer is the
+ * only one moving the head. Producers never wait for the consumer, when the
+ * queue is full the command is rejected and offer returns false, leaving it to
+ * the producer to retry later or drop the command.
+ *
+ * Commands from a single producer are applied in the order they were offered.
+ * Commands from different producers are applied in the order they claimed
+ * their slot.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class EntityCommandQueue {
+
+    private final AtomicReferenceArray<EntityCommand> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long applied;
+    private volatile int highWatermark;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param capacity The maximum number of pending commands, rounded up to a
+     *                 power of two.
+     */
+    public EntityCommandQueue(final int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity should be between 1 and 2^30.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Offer a command to the queue. This can be called from any thread.
+     * <p/>
+     * @param command The command.
+     * @return False when the queue is full and the command was rejected.
+     */
+    public boolean offer(final EntityCommand command) {
+        if (command == null) {
+            throw new IllegalArgumentException("Command should not be null.");
+        }
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head.get() > mask) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+        slots.lazySet((int) claimed & mask, command);
+        return true;
+    }
+
+    /**
+     * Offer a command creating a new entity.
+     * <p/>
+     * @param components The components of the new entity.
+     * @return False when the queue is full and the command was rejected.
+     */
+    public boolean createEntity(final EntityComponent... components) {
+        return offer(new EntityCommand() {
+            @Override
+            public void apply(final Entities entities) {
+                entities.createEntity(components);
+            }
+        });
+    }
+
+    /**
+     * Offer a command adding components to an existing entity. A component
+     * replaces the component of the same type the entity already has.
+     * <p/>
+     * @param entity     The entity to add the components to.
+     * @param components The components to add.
+     * @return False when the queue is full and the command was rejected.
+     */
+    public boolean addComponents(final Entity entity, final EntityComponent... components) {
+        return offer(new EntityCommand() {
+            @Override
+            public void apply(final Entities entities) {
+                entities.addComponentsToEntity(entity, components);
+            }
+        });
+    }
+
+    /**
+     * Offer a command removing components from an existing entity.
+     * <p/>
+     * @param entity         The entity to remove the components from.
+     * @param componentTypes The types of the components to remove.
+     * @return False when the queue is full and the command was rejected.
+     */
+    @SafeVarargs
+    public final boolean removeComponents(final Entity entity,
+                                          final Class<? extends EntityComponent>... componentTypes) {
+        return offer(new EntityCommand() {
+            @Override
+            public void apply(final Entities entities) {
+                for (Class<? extends EntityComponent> componentType : componentTypes) {
+                    entities.removeComponentsFromEntity(entity, componentType);
+                }
+            }
+        });
+    }
+
+    /**
+     * Offer a command moving an existing entity.
+     * <p/>
+     * @param entity   The entity to move.
+     * @param location The new location of the entity.
+     * @return False when the queue is full and the command was rejected.
+     */
+    public boolean updateLocation(final Entity entity, final LocationComponent location) {
+        return addComponents(entity, location);
+    }
+
+    /**
+     * Apply the pending commands, in order. Only the commands offered before
+     * the drain started are applied, so producers can not keep the consumer
+     * busy indefinitely. This should only be called from the thread owning the
+     * entities.
+     * <p/>
+     * @param entities The entities to change.
+     * @return The number of commands applied.
+     */
+    public int drainTo(final Entities entities) {
+        long first = head.get();
+        long last = tail.get();
+        highWatermark = Math.max(highWatermark, (int) (last - first));
+        long current = first;
+        while (current < last) {
+            int index = (int) current & mask;
+            EntityCommand command = slots.get(index);
+            if (command == null) {
+                // the slot is claimed, but the producer has not stored its command yet
+                break;
+            }
+            slots.lazySet(index, null);
+            head.lazySet(++current);
+            command.apply(entities);
+        }
+        int count = (int) (current - first);
+        applied += count;
+        return count;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Get the number of commands waiting to be applied. Since producers keep
+     * offering while this is read, the result is an estimate.
+     * <p/>
+     * @return The number of pending commands.
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public long getOfferedCount() {
+        return tail.get() + rejected.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getAppliedCount() {
+        return applied;
+    }
+
+    /**
+     * Get the highest number of pending commands seen at the start of a drain.
+     * <p/>
+     * @return The high watermark.
+     */
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+}
@@ -0,0 +1,94 @@
+package com.ractoc.fs.games.thehuntison.simulation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.jme3.math.Transform;
+
+/**
+ * Immutable copy of the LocationComponents of all entities at the end of a
+ * simulation tick. Next to the location, each entry contains the model of the
+ * entity, when it has a RenderComponent. The snapshot also knows which entity
+ * is controlled by the player. This is all the render thread needs, so it never
+ * has to touch the entities while the simulation is running.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class LocationSnapshot {
+
+    private final long tick;
+    private final long publishTime;
+    private final Map<Object, Entry> entries;
+    private final Object controlledId;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param tick         The simulation tick this snapshot was taken at.
+     * @param entries      The entries of the snapshot, by entity id.
+     * @param controlledId The id of the entity controlled by the player, or
+     *                     null when there is none.
+     */
+    public LocationSnapshot(final long tick, final Map<Object, Entry> entries, final Object controlledId) {
+        this.tick = tick;
+        this.publishTime = System.nanoTime();
+        this.entries = Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+        this.controlledId = controlledId;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Get the moment this snapshot was created, in nano seconds.
+     * <p/>
+     * @return The creation time as returned by System.nanoTime().
+     */
+    public long getPublishTime() {
+        return publishTime;
+    }
+
+    public Map<Object, Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry getEntry(final Object entityId) {
+        return entries.get(entityId);
+    }
+
+    public Object getControlledId() {
+        return controlledId;
+    }
+
+    /**
+     * The location of a single entity.
+     */
+    public static final class Entry {
+
+        private final String j3o;
+        private final Transform transform;
+
+        /**
+         * Constructor.
+         * <p/>
+         * @param j3o       The model of the entity, or null when the entity is
+         *                  not rendered.
+         * @param transform The location of the entity. This is copied.
+         */
+        public Entry(final String j3o, final Transform transform) {
+            this.j3o = j3o;
+            this.transform = transform.clone();
+        }
+
+        public String getJ3o() {
+            return j3o;
+        }
+
+        public Transform getTransform() {
+            return transform;
+        }
+    }
+}
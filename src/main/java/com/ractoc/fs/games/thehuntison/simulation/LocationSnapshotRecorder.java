@@ -0,0 +1,97 @@
+package com.ractoc.fs.games.thehuntison.simulation;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.forgottenspace.es.ComponentTypeCriteria;
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.Entity;
+import com.forgottenspace.es.EntityResultSet;
+import com.forgottenspace.es.components.ControlledComponent;
+import com.forgottenspace.es.components.LocationComponent;
+import com.forgottenspace.es.components.RenderComponent;
+import com.jme3.math.Transform;
+
+/**
+ * Creates LocationSnapshots of the entities. The recorder keeps track of all
+ * entities with a LocationComponent through its own result sets, so it should
+ * always be used from the thread changing the entities.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class LocationSnapshotRecorder {
+
+    private final Entities entities;
+    private final EntityResultSet locatedSet;
+    private final EntityResultSet renderedSet;
+    private final EntityResultSet controlledSet;
+    private final Map<Object, Entity> located = new LinkedHashMap<>();
+    private final Map<Object, String> models = new LinkedHashMap<>();
+    private Object controlledId;
+    private long tick;
+
+    /**
+     * Constructor, registers the queries for the located entities.
+     * <p/>
+     * @param entities The entities to record.
+     */
+    public LocationSnapshotRecorder(final Entities entities) {
+        this.entities = entities;
+        this.locatedSet = entities.queryEntities(new ComponentTypeCriteria(LocationComponent.class));
+        this.renderedSet = entities.queryEntities(new ComponentTypeCriteria(RenderComponent.class, LocationComponent.class));
+        this.controlledSet = entities.queryEntities(new ComponentTypeCriteria(ControlledComponent.class, LocationComponent.class));
+    }
+
+    /**
+     * Create a snapshot of the current location of all entities.
+     * <p/>
+     * @return The snapshot.
+     */
+    public LocationSnapshot record() {
+        trackEntities();
+        Map<Object, LocationSnapshot.Entry> entries = new LinkedHashMap<>();
+        Transform transform = new Transform();
+        for (Map.Entry<Object, Entity> entity : located.entrySet()) {
+            LocationComponent locComp = entities.loadComponentForEntity(entity.getValue(), LocationComponent.class);
+            transform.setTranslation(locComp.getTranslation());
+            transform.setRotation(locComp.getRotation());
+            transform.setScale(locComp.getScale());
+            entries.put(entity.getKey(), new LocationSnapshot.Entry(models.get(entity.getKey()), transform));
+        }
+        return new LocationSnapshot(tick++, entries, controlledId);
+    }
+
+    private void trackEntities() {
+        EntityResultSet.UpdateProcessor processor = locatedSet.getUpdateProcessor();
+        for (Entity removed : processor.getRemovedEntities()) {
+            located.remove(removed.getId());
+        }
+        for (Entity added : processor.getAddedEntities()) {
+            located.put(added.getId(), added);
+        }
+        processor.finalizeUpdates();
+
+        processor = renderedSet.getUpdateProcessor();
+        for (Entity removed : processor.getRemovedEntities()) {
+            models.remove(removed.getId());
+        }
+        for (Entity added : processor.getAddedEntities()) {
+            models.put(added.getId(), entities.loadComponentForEntity(added, RenderComponent.class).getJ3o());
+        }
+        processor.finalizeUpdates();
+
+        processor = controlledSet.getUpdateProcessor();
+        List<Entity> added = processor.getAddedEntities();
+        for (Entity removed : processor.getRemovedEntities()) {
+            if (removed.getId().equals(controlledId)) {
+                controlledId = null;
+            }
+        }
+        if (!added.isEmpty()) {
+            controlledId = added.get(0).getId();
+        }
+        processor.finalizeUpdates();
+    }
+}
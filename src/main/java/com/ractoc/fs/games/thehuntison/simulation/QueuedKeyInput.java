@@ -0,0 +1,85 @@
+package com.ractoc.fs.games.thehuntison.simulation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.jme3.input.KeyInput;
+import com.jme3.input.RawInputListener;
+import com.jme3.input.event.KeyInputEvent;
+
+/**
+ * KeyInput without a device, fed with key events by the game, for instance
+ * from another thread or from a recorded InputJournal. Events can be offered
+ * from any thread at any time. They are handed to the InputManager, in the
+ * order they were offered, when it polls this KeyInput during its own update.
+ * This is the only time the InputManager accepts events, so the InputManager
+ * using this KeyInput can be updated on a different thread than the one
+ * polling the real keyboard.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class QueuedKeyInput implements KeyInput {
+
+    private final Queue<KeyInputEvent> events = new ConcurrentLinkedQueue<>();
+    private RawInputListener listener;
+    private boolean initialized;
+
+    /**
+     * Queue a key event for the next update. This can be called from any
+     * thread.
+     * <p/>
+     * @param event The key event.
+     */
+    public void offer(final KeyInputEvent event) {
+        events.add(event);
+    }
+
+    @Override
+    public void initialize() {
+        initialized = true;
+    }
+
+    @Override
+    public void update() {
+        if (!initialized) {
+            throw new IllegalStateException("KeyInput not initialized.");
+        }
+        KeyInputEvent event;
+        while ((event = events.poll()) != null) {
+            if (listener != null) {
+                listener.onKeyEvent(event);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        initialized = false;
+        events.clear();
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    @Override
+    public void setInputListener(final RawInputListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public long getInputTimeNanos() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Get the number of events waiting for the next update.
+     * <p/>
+     * @return The number of pending events.
+     */
+    public int getPendingCount() {
+        return events.size();
+    }
+}
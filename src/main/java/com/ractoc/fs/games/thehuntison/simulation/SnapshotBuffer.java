@@ -0,0 +1,119 @@
+package com.ractoc.fs.games.thehuntison.simulation;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Transform;
+
+/**
+ * Double buffer of LocationSnapshots, written by the simulation thread and read
+ * by the render thread. It always holds the last two snapshots published, so the
+ * render thread can interpolate between them. Both snapshots are swapped in a
+ * single volatile write, so a reader never sees a half published pair.
+ *
+ * A reader should get the pair once per frame and do all its work on that
+ * pair. Getting the pair again halfway through the frame might return a newer
+ * one, mixing two different ticks in the same frame.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class SnapshotBuffer {
+
+    private final long tickNanos;
+    private volatile Pair pair;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param tickNanos The time between two simulation ticks, in nano seconds.
+     */
+    public SnapshotBuffer(final long tickNanos) {
+        this.tickNanos = tickNanos;
+        this.pair = new Pair(null, null, tickNanos);
+    }
+
+    /**
+     * Publish a new snapshot. The current snapshot becomes the previous one.
+     * <p/>
+     * @param snapshot The new snapshot.
+     */
+    public void publish(final LocationSnapshot snapshot) {
+        pair = new Pair(pair.current, snapshot, tickNanos);
+    }
+
+    /**
+     * Get the last two snapshots published.
+     * <p/>
+     * @return The pair of snapshots.
+     */
+    public Pair getPair() {
+        return pair;
+    }
+
+    /**
+     * The last two snapshots at the moment they were read from the buffer.
+     */
+    public static final class Pair {
+
+        private final LocationSnapshot previous;
+        private final LocationSnapshot current;
+        private final long tickNanos;
+
+        private Pair(final LocationSnapshot previous, final LocationSnapshot current, final long tickNanos) {
+            this.previous = previous;
+            this.current = current;
+            this.tickNanos = tickNanos;
+        }
+
+        public LocationSnapshot getPrevious() {
+            return previous;
+        }
+
+        public LocationSnapshot getCurrent() {
+            return current;
+        }
+
+        /**
+         * Get the position of the render between the previous and the current
+         * snapshot. This is based on the time passed since the current
+         * snapshot was published.
+         * <p/>
+         * @return A value between 0 (previous snapshot) and 1 (current
+         *         snapshot).
+         */
+        public float getAlpha() {
+            if (current == null) {
+                return 1f;
+            }
+            float alpha = (float) (System.nanoTime() - current.getPublishTime()) / tickNanos;
+            return FastMath.clamp(alpha, 0f, 1f);
+        }
+
+        /**
+         * Interpolate the location of the entity between the previous and the
+         * current snapshot. When the entity is not in the previous snapshot,
+         * the location in the current snapshot is used.
+         * <p/>
+         * @param entityId The id of the entity.
+         * @param alpha    The position between the snapshots, see getAlpha().
+         * @param store    The transform to store the location in.
+         * @return False when the entity is not in the current snapshot, in
+         *         which case store is not changed.
+         */
+        public boolean interpolate(final Object entityId, final float alpha, final Transform store) {
+            if (current == null) {
+                return false;
+            }
+            LocationSnapshot.Entry to = current.getEntry(entityId);
+            if (to == null) {
+                return false;
+            }
+            LocationSnapshot.Entry from = previous == null ? null : previous.getEntry(entityId);
+            if (from == null) {
+                store.set(to.getTransform());
+            } else {
+                store.interpolateTransforms(from.getTransform(), to.getTransform(), alpha);
+            }
+            return true;
+        }
+    }
+}
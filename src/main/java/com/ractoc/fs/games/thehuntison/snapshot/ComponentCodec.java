@@ -0,0 +1,34 @@
+package com.ractoc.fs.games.thehuntison.snapshot;
+
+import java.nio.ByteBuffer;
+
+import com.forgottenspace.es.EntityComponent;
+
+/**
+ * Converts a single component type to and from its binary form in a world
+ * snapshot.
+ *
+ * @param <T> The component type.
+ * @author ractoc
+ * @since 0.2
+ */
+public interface ComponentCodec<T extends EntityComponent> {
+
+    /**
+     * Write the component to the buffer. When the buffer is too small, a
+     * BufferOverflowException is thrown and the write is retried with a larger
+     * buffer.
+     * <p/>
+     * @param component The component to write.
+     * @param buffer    The buffer to write to.
+     */
+    void write(T component, ByteBuffer buffer);
+
+    /**
+     * Read a component from the buffer.
+     * <p/>
+     * @param buffer The buffer to read from.
+     * @return The component read.
+     */
+    T read(ByteBuffer buffer);
+}
@@ -0,0 +1,105 @@
+package com.ractoc.fs.games.thehuntison.snapshot;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.forgottenspace.es.EntityComponent;
+
+/**
+ * The codecs for all component types stored in a world snapshot. The component
+ * types are written in the order they were registered.
+ *
+ * Component types without a dedicated codec can be registered as serializable.
+ * These are not written by a codec, but through a single object stream shared
+ * by all serializable components in the snapshot.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class ComponentCodecs {
+
+    private final Set<Class<? extends EntityComponent>> componentTypes = new LinkedHashSet<>();
+    private final Map<Class<? extends EntityComponent>, ComponentCodec<?>> codecs = new HashMap<>();
+    private final Set<Class<? extends EntityComponent>> serializable = new HashSet<>();
+    private final Map<String, Class<? extends EntityComponent>> typesByName = new LinkedHashMap<>();
+
+    /**
+     * Register a dedicated codec for the component type.
+     * <p/>
+     * @param <T>           The component type.
+     * @param componentType The component type.
+     * @param codec         The codec for the component type.
+     */
+    public <T extends EntityComponent> void register(final Class<T> componentType, final ComponentCodec<T> codec) {
+        serializable.remove(componentType);
+        codecs.put(componentType, codec);
+        componentTypes.add(componentType);
+        typesByName.put(componentType.getName(), componentType);
+    }
+
+    /**
+     * Register the component types to be written using java serialization.
+     * Component types which already have a codec are skipped.
+     * <p/>
+     * @param componentTypes The component types.
+     */
+    @SafeVarargs
+    public final void registerSerializable(final Class<? extends EntityComponent>... componentTypes) {
+        for (Class<? extends EntityComponent> componentType : componentTypes) {
+            if (!codecs.containsKey(componentType)) {
+                serializable.add(componentType);
+                this.componentTypes.add(componentType);
+                typesByName.put(componentType.getName(), componentType);
+            }
+        }
+    }
+
+    /**
+     * Check whether the component type is written using java serialization
+     * instead of a codec.
+     * <p/>
+     * @param componentType The component type.
+     * @return True when the component type was registered as serializable.
+     */
+    public boolean isSerializable(final Class<? extends EntityComponent> componentType) {
+        return serializable.contains(componentType);
+    }
+
+    /**
+     * Get the codec for the component type.
+     * <p/>
+     * @param componentType The component type.
+     * @return The codec.
+     */
+    @SuppressWarnings("unchecked")
+    public ComponentCodec<EntityComponent> getCodec(final Class<? extends EntityComponent> componentType) {
+        ComponentCodec<?> codec = codecs.get(componentType);
+        if (codec == null) {
+            throw new SnapshotException("No codec for component " + componentType.getName());
+        }
+        return (ComponentCodec<EntityComponent>) codec;
+    }
+
+    /**
+     * Get the registered component type with the given name.
+     * <p/>
+     * @param name The fully qualified class name of the component type.
+     * @return The component type.
+     */
+    public Class<? extends EntityComponent> getComponentType(final String name) {
+        Class<? extends EntityComponent> componentType = typesByName.get(name);
+        if (componentType == null) {
+            throw new SnapshotException("Unknown component " + name);
+        }
+        return componentType;
+    }
+
+    public Set<Class<? extends EntityComponent>> getComponentTypes() {
+        return Collections.unmodifiableSet(componentTypes);
+    }
+}
@@ -0,0 +1,33 @@
+package com.ractoc.fs.games.thehuntison.snapshot;
+
+import java.util.Set;
+
+import com.forgottenspace.es.EntityComponent;
+
+/**
+ * Holds components which are temporarily taken off their entities and will be
+ * given back later. The WorldSnapshotWriter writes these components as if they
+ * were still on their entities.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public interface DetachedComponentSource {
+
+    /**
+     * Get the ids of all entities with detached components.
+     * <p/>
+     * @return The entity ids.
+     */
+    Set<Object> getDetachedEntityIds();
+
+    /**
+     * Get the detached component of the given type.
+     * <p/>
+     * @param entityId      The id of the entity.
+     * @param componentType The component type.
+     * @return The component, or null when no component of the type is
+     *         detached from the entity.
+     */
+    EntityComponent getDetachedComponent(Object entityId, Class<? extends EntityComponent> componentType);
+}
@@ -0,0 +1,36 @@
+package com.ractoc.fs.games.thehuntison.snapshot;
+
+import java.nio.ByteBuffer;
+
+import com.forgottenspace.es.components.LocationComponent;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * Codec for the LocationComponent. Since this is by far the most common
+ * component, it is written as 10 plain floats instead of going through java
+ * serialization.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class LocationComponentCodec implements ComponentCodec<LocationComponent> {
+
+    @Override
+    public void write(final LocationComponent component, final ByteBuffer buffer) {
+        Vector3f translation = component.getTranslation();
+        Quaternion rotation = component.getRotation();
+        Vector3f scale = component.getScale();
+        buffer.putFloat(translation.x).putFloat(translation.y).putFloat(translation.z);
+        buffer.putFloat(rotation.getX()).putFloat(rotation.getY()).putFloat(rotation.getZ()).putFloat(rotation.getW());
+        buffer.putFloat(scale.x).putFloat(scale.y).putFloat(scale.z);
+    }
+
+    @Override
+    public LocationComponent read(final ByteBuffer buffer) {
+        Vector3f translation = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        Quaternion rotation = new Quaternion(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        Vector3f scale = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        return new LocationComponent(translation, rotation, scale);
+    }
+}
@@ -0,0 +1,42 @@
+package com.ractoc.fs.games.thehuntison.snapshot;
+
+import java.nio.ByteBuffer;
+
+import com.forgottenspace.es.EntityComponent;
+
+/**
+ * Codec for component types without any state, which only mark the entity. No
+ * bytes are written for the component, on read a new instance is created using
+ * the no argument constructor.
+ *
+ * @param <T> The component type.
+ * @author ractoc
+ * @since 0.2
+ */
+public final class MarkerComponentCodec<T extends EntityComponent> implements ComponentCodec<T> {
+
+    private final Class<T> componentType;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param componentType The component type, it needs a public no argument
+     *                      constructor.
+     */
+    public MarkerComponentCodec(final Class<T> componentType) {
+        this.componentType = componentType;
+    }
+
+    @Override
+    public void write(final T component, final ByteBuffer buffer) {
+    }
+
+    @Override
+    public T read(final ByteBuffer buffer) {
+        try {
+            return componentType.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new SnapshotException("Unable to create component " + componentType.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.ractoc.fs.games.thehuntison.snapshot;
+
+/**
+ * Thrown when a world snapshot can not be written or restored.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public class SnapshotException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SnapshotException(final String message) {
+        super(message);
+    }
+
+    public SnapshotException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,314 @@
+package com.ractoc.fs.games.thehuntison.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.Entity;
+import com.forgottenspace.es.EntityComponent;
+
+/**
+ * Restores the entities from world snapshots written by the
+ * WorldSnapshotWriter. The snapshot files are memory mapped, so only the parts
+ * actually read are loaded from disk.
+ *
+ * A chain of snapshots is restored by first restoring a full snapshot, followed
+ * by all deltas written after it, in order. Every snapshot is decoded completely
+ * before anything is applied to the entities, so a corrupt snapshot is never
+ * partially restored. An entity losing its last component in a delta is
+ * destroyed, just like it was on the writing side.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class WorldSnapshotReader {
+
+    private static final Logger LOGGER = Logger.getLogger(WorldSnapshotReader.class.getName());
+
+    private final Entities entities;
+    private final ComponentCodecs codecs;
+    private final Map<Integer, RestoredEntity> restored = new HashMap<>();
+    private long sequence = -1;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param entities The entities to restore the snapshots into.
+     * @param codecs   The codecs for the component types.
+     */
+    public WorldSnapshotReader(final Entities entities, final ComponentCodecs codecs) {
+        this.entities = entities;
+        this.codecs = codecs;
+    }
+
+    /**
+     * Restore the latest valid full snapshot in the directory, followed by the
+     * deltas written after it. The files are taken in the order of their names.
+     * When the latest full snapshot can not be decoded, an older one is used.
+     * The deltas are restored up to the first one that can not be decoded or
+     * does not follow the snapshot before it, which is where the last complete
+     * write ended.
+     * <p/>
+     * @param directory The directory containing the snapshot files.
+     * @return False when the directory contains no valid full snapshot.
+     */
+    public boolean restoreLatest(final Path directory) {
+        List<Path> files = listSnapshots(directory);
+        for (int start = files.size() - 1; start >= 0; start--) {
+            Snapshot full = tryDecode(files.get(start));
+            if (full == null || full.kind != WorldSnapshotWriter.FULL) {
+                continue;
+            }
+            List<Snapshot> chain = new ArrayList<>();
+            chain.add(full);
+            for (Path file : files.subList(start + 1, files.size())) {
+                Snapshot delta = tryDecode(file);
+                if (delta == null || delta.kind != WorldSnapshotWriter.DELTA
+                        || delta.sequence != chain.get(chain.size() - 1).sequence + 1) {
+                    LOGGER.log(Level.WARNING, "Snapshot {0} does not continue the chain, restored up to the file before it.", file);
+                    break;
+                }
+                chain.add(delta);
+            }
+            for (Snapshot snapshot : chain) {
+                apply(snapshot);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Restore a single snapshot file. A delta can only be restored directly
+     * after the snapshot it is based on.
+     * <p/>
+     * @param file The snapshot file.
+     */
+    public void restore(final Path file) {
+        restore(map(file));
+    }
+
+    /**
+     * Restore a single snapshot from the buffer.
+     * <p/>
+     * @param snapshot The snapshot.
+     */
+    public void restore(final ByteBuffer snapshot) {
+        apply(decode(snapshot));
+    }
+
+    private void apply(final Snapshot snapshot) {
+        if (snapshot.kind == WorldSnapshotWriter.FULL) {
+            restored.clear();
+        } else if (sequence < 0 || snapshot.sequence != sequence + 1) {
+            throw new SnapshotException("Delta " + snapshot.sequence + " does not follow snapshot " + sequence);
+        }
+        sequence = snapshot.sequence;
+
+        Map<Integer, List<EntityComponent>> created = new LinkedHashMap<>();
+        for (TypeSection section : snapshot.sections) {
+            for (int i = 0; i < section.indices.length; i++) {
+                int index = section.indices[i];
+                EntityComponent component = section.components[i];
+                RestoredEntity entity = restored.get(index);
+                if (entity != null) {
+                    entities.addComponentsToEntity(entity.entity, component);
+                    entity.componentTypes.add(section.componentType);
+                } else {
+                    if (!created.containsKey(index)) {
+                        created.put(index, new ArrayList<EntityComponent>());
+                    }
+                    created.get(index).add(component);
+                }
+            }
+        }
+        // removals go after all additions, so an entity only ends up empty when it lost every component
+        for (TypeSection section : snapshot.sections) {
+            for (int index : section.removed) {
+                RestoredEntity entity = restored.get(index);
+                if (entity != null) {
+                    entities.removeComponentsFromEntity(entity.entity, section.componentType);
+                    entity.componentTypes.remove(section.componentType);
+                    if (entity.componentTypes.isEmpty()) {
+                        entities.destroyEntity(entity.entity);
+                        restored.remove(index);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Integer, List<EntityComponent>> entity : created.entrySet()) {
+            List<EntityComponent> components = entity.getValue();
+            RestoredEntity restoredEntity = new RestoredEntity(entities.createEntity(components.toArray(new EntityComponent[components.size()])));
+            for (EntityComponent component : components) {
+                restoredEntity.componentTypes.add(component.getClass());
+            }
+            restored.put(entity.getKey(), restoredEntity);
+        }
+    }
+
+    private Snapshot tryDecode(final Path file) {
+        try {
+            return decode(map(file));
+        } catch (SnapshotException e) {
+            LOGGER.log(Level.WARNING, "Skipping invalid snapshot " + file, e);
+            return null;
+        }
+    }
+
+    private Snapshot decode(final ByteBuffer snapshot) {
+        ByteBuffer buffer = snapshot.duplicate();
+        try {
+            Snapshot decoded = new Snapshot(readHeader(buffer), buffer.getLong());
+            ObjectInputStream objects = openObjects(buffer, buffer.getInt());
+            int typeCount = buffer.getInt();
+            for (int t = 0; t < typeCount; t++) {
+                byte[] name = new byte[buffer.getShort()];
+                buffer.get(name);
+                Class<? extends EntityComponent> componentType = codecs.getComponentType(new String(name, StandardCharsets.UTF_8));
+                boolean serializable = codecs.isSerializable(componentType);
+                ComponentCodec<EntityComponent> codec = serializable ? null : codecs.getCodec(componentType);
+                int count = readCount(buffer);
+                TypeSection section = new TypeSection(componentType, count);
+                for (int i = 0; i < count; i++) {
+                    section.indices[i] = buffer.getInt();
+                    section.components[i] = serializable ? readObject(objects, componentType) : codec.read(buffer);
+                }
+                section.removed = new int[readCount(buffer)];
+                for (int i = 0; i < section.removed.length; i++) {
+                    section.removed[i] = buffer.getInt();
+                }
+                decoded.sections.add(section);
+            }
+            return decoded;
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new SnapshotException("Truncated or corrupt snapshot.", e);
+        }
+    }
+
+    private static int readCount(final ByteBuffer buffer) {
+        int count = buffer.getInt();
+        // every entry takes at least its 4 byte entity index
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new SnapshotException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    private static ObjectInputStream openObjects(final ByteBuffer buffer, final int offset) {
+        ByteBuffer block = buffer.duplicate();
+        block.position(offset);
+        byte[] bytes = new byte[block.getInt()];
+        if (bytes.length == 0) {
+            return null;
+        }
+        block.get(bytes);
+        try {
+            return new ObjectInputStream(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw new SnapshotException("Unable to read components.", e);
+        }
+    }
+
+    private static EntityComponent readObject(final ObjectInputStream objects,
+                                              final Class<? extends EntityComponent> componentType) {
+        if (objects == null) {
+            throw new SnapshotException("Missing component " + componentType.getName());
+        }
+        try {
+            return componentType.cast(objects.readUnshared());
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new SnapshotException("Unable to read component " + componentType.getName(), e);
+        }
+    }
+
+    private static byte readHeader(final ByteBuffer buffer) {
+        if (buffer.getInt() != WorldSnapshotWriter.MAGIC) {
+            throw new SnapshotException("Not a world snapshot.");
+        }
+        short version = buffer.getShort();
+        if (version != WorldSnapshotWriter.VERSION) {
+            throw new SnapshotException("Unsupported snapshot version " + version);
+        }
+        return buffer.get();
+    }
+
+    private static MappedByteBuffer map(final Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new SnapshotException("Unable to read snapshot " + file, e);
+        }
+    }
+
+    private static List<Path> listSnapshots(final Path directory) {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + WorldSnapshotWriter.EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            throw new SnapshotException("Unable to list snapshots in " + directory, e);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static final class Snapshot {
+
+        private final byte kind;
+        private final long sequence;
+        private final List<TypeSection> sections = new ArrayList<>();
+
+        private Snapshot(final byte kind, final long sequence) {
+            this.kind = kind;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class RestoredEntity {
+
+        private final Entity entity;
+        private final Set<Class<? extends EntityComponent>> componentTypes = new HashSet<>();
+
+        private RestoredEntity(final Entity entity) {
+            this.entity = entity;
+        }
+    }
+
+    private static final class TypeSection {
+
+        private final Class<? extends EntityComponent> componentType;
+        private final int[] indices;
+        private final EntityComponent[] components;
+        private int[] removed;
+
+        private TypeSection(final Class<? extends EntityComponent> componentType, final int count) {
+            this.componentType = componentType;
+            this.indices = new int[count];
+            this.components = new EntityComponent[count];
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.ractoc.fs.games.thehuntison.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.forgottenspace.es.ComponentTypeCriteria;
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.Entity;
+import com.forgottenspace.es.EntityComponent;
+import com.forgottenspace.es.EntityResultSet;
+
+/**
+ * Encodes the entities into the binary world snapshot format. A snapshot is
+ * either full, containing every component of every entity, or a delta,
+ * containing only the components changed and removed since the previous
+ * snapshot.
+ *
+ * The format is:
+ * <pre>
+ * int    magic "FSWS"
+ * short  version
+ * byte   kind, 0 for full, 1 for delta
+ * long   sequence number
+ * int    offset of the object block
+ * int    number of component types
+ * per component type:
+ *   short + bytes  class name of the component type, UTF-8
+ *   int            number of components
+ *   per component: int entity index, component as written by its codec
+ *   int            number of removed components
+ *   per removed component: int entity index
+ * object block:
+ *   int + bytes    a single java object stream
+ * </pre>
+ *
+ * Components registered as serializable have no bytes after their entity
+ * index. Instead, they are all written to the one object stream in the object
+ * block, in the order they appear in the snapshot. This way the stream header
+ * and class descriptors are written once per snapshot, instead of once per
+ * component.
+ *
+ * Entities are identified by an index assigned by the writer, which stays the
+ * same for as long as the entity has at least one of the written component
+ * types. A component is considered changed when the entity holds a different
+ * component instance than the one last written. A component is considered
+ * removed when it was written before, but is no longer on the entity nor held
+ * by the DetachedComponentSource.
+ *
+ * Since changes are found by instance, the components are expected to be
+ * immutable: a change is made by adding a new component to the entity, which
+ * replaces the old one. This is how the systems of the entity system change
+ * their components. A component changed in place is not written by a delta,
+ * only by the next full snapshot.
+ *
+ * The writer tracks the entities through its own result sets, so it should
+ * always be used from the thread changing the entities. Encoding only copies
+ * the components into a buffer; writing the buffer to disk can be done on any
+ * thread.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class WorldSnapshotWriter {
+
+    /**
+     * The extension of snapshot files.
+     */
+    public static final String EXTENSION = ".snap";
+    static final int MAGIC = 0x46535753;
+    static final short VERSION = 2;
+    static final int OBJECTS_OFFSET_POSITION = 15;
+    static final byte FULL = 0;
+    static final byte DELTA = 1;
+
+    private final Entities entities;
+    private final ComponentCodecs codecs;
+    private final List<TypeTracker> trackers = new ArrayList<>();
+    private final Map<Object, Integer> indices = new HashMap<>();
+    private final Set<Object> released = new HashSet<>();
+    private final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+    private ObjectOutputStream objects;
+    private DetachedComponentSource detached;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private int nextIndex;
+    private long sequence;
+    private boolean fullWritten;
+
+    /**
+     * Constructor, registers the queries for all component types known to the
+     * codecs.
+     * <p/>
+     * @param entities The entities to write.
+     * @param codecs   The codecs for the component types.
+     */
+    public WorldSnapshotWriter(final Entities entities, final ComponentCodecs codecs) {
+        this.entities = entities;
+        this.codecs = codecs;
+        for (Class<? extends EntityComponent> componentType : codecs.getComponentTypes()) {
+            trackers.add(new TypeTracker(componentType, entities.queryEntities(new ComponentTypeCriteria(componentType))));
+        }
+    }
+
+    /**
+     * Encode a snapshot of the entities. The first snapshot is always full.
+     * <p/>
+     * @param full True for a full snapshot, false for a delta since the
+     *             previous snapshot.
+     * @return A buffer containing the snapshot, ready to be read.
+     */
+    public ByteBuffer encode(final boolean full) {
+        boolean writeFull = full || !fullWritten;
+        buffer.clear();
+        ensureCapacity(23);
+        buffer.putInt(MAGIC).putShort(VERSION).put(writeFull ? FULL : DELTA).putLong(sequence++).putInt(0).putInt(trackers.size());
+        try {
+            for (TypeTracker tracker : trackers) {
+                encodeType(tracker, writeFull);
+            }
+            buffer.putInt(OBJECTS_OFFSET_POSITION, buffer.position());
+            putObjects();
+        } finally {
+            objects = null;
+            objectBytes.reset();
+        }
+        releaseIndices();
+        fullWritten = true;
+        buffer.flip();
+        ByteBuffer snapshot = ByteBuffer.allocate(buffer.remaining());
+        snapshot.put(buffer).flip();
+        return snapshot;
+    }
+
+    /**
+     * Set the source of the components which are temporarily taken off their
+     * entities. These are written as if they were still on the entity, so a
+     * restored snapshot does not lose them.
+     * <p/>
+     * @param detached The source of the detached components, or null.
+     */
+    public void setDetachedComponents(final DetachedComponentSource detached) {
+        this.detached = detached;
+    }
+
+    /**
+     * Write an encoded snapshot to a file. The snapshot is first written to a
+     * temporary file next to it, which is then moved in place atomically. A
+     * crash during the write therefore never leaves a partial snapshot file.
+     * <p/>
+     * @param snapshot The encoded snapshot.
+     * @param file     The file to write to, it is replaced when it exists.
+     */
+    public static void write(final ByteBuffer snapshot, final Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer data = snapshot.duplicate();
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                channel.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // the original exception is the one worth reporting
+            }
+            throw new SnapshotException("Unable to write snapshot " + file, e);
+        }
+    }
+
+    private void encodeType(final TypeTracker tracker, final boolean full) {
+        tracker.update();
+        ComponentCodec<EntityComponent> codec = codecs.isSerializable(tracker.componentType)
+                                                ? null : codecs.getCodec(tracker.componentType);
+        byte[] name = tracker.componentType.getName().getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(name.length + 6);
+        buffer.putShort((short) name.length).put(name);
+
+        int countPosition = buffer.position();
+        buffer.putInt(0);
+        int count = 0;
+        for (Map.Entry<Object, Entity> member : tracker.members.entrySet()) {
+            EntityComponent component = entities.loadComponentForEntity(member.getValue(), tracker.componentType);
+            if (putIfChanged(tracker, member.getKey(), component, codec, full)) {
+                count++;
+            }
+        }
+        if (detached != null) {
+            for (Object entityId : detached.getDetachedEntityIds()) {
+                EntityComponent component = detached.getDetachedComponent(entityId, tracker.componentType);
+                if (component != null && !tracker.members.containsKey(entityId)
+                        && putIfChanged(tracker, entityId, component, codec, full)) {
+                    count++;
+                }
+            }
+        }
+        buffer.putInt(countPosition, count);
+
+        // everything written before which is neither on an entity nor detached anymore, is removed
+        List<Object> removed = new ArrayList<>();
+        for (Iterator<Object> written = tracker.written.keySet().iterator(); written.hasNext();) {
+            Object entityId = written.next();
+            if (!tracker.members.containsKey(entityId) && !isDetached(entityId, tracker.componentType)) {
+                removed.add(entityId);
+                written.remove();
+            }
+        }
+        if (full) {
+            ensureCapacity(4);
+            buffer.putInt(0);
+        } else {
+            ensureCapacity(4 + 4 * removed.size());
+            buffer.putInt(removed.size());
+            for (Object removedId : removed) {
+                buffer.putInt(getIndex(removedId));
+            }
+        }
+        released.addAll(removed);
+    }
+
+    private boolean putIfChanged(final TypeTracker tracker, final Object entityId, final EntityComponent component,
+                                 final ComponentCodec<EntityComponent> codec, final boolean full) {
+        if (!full && component == tracker.written.get(entityId)) {
+            return false;
+        }
+        putComponent(getIndex(entityId), component, codec);
+        tracker.written.put(entityId, component);
+        return true;
+    }
+
+    private boolean isDetached(final Object entityId, final Class<? extends EntityComponent> componentType) {
+        return detached != null && detached.getDetachedComponent(entityId, componentType) != null;
+    }
+
+    private void putComponent(final int index, final EntityComponent component, final ComponentCodec<EntityComponent> codec) {
+        if (codec == null) {
+            ensureCapacity(4);
+            buffer.putInt(index);
+            writeObject(component);
+            return;
+        }
+        while (true) {
+            int mark = buffer.position();
+            try {
+                buffer.putInt(index);
+                codec.write(component, buffer);
+                return;
+            } catch (BufferOverflowException e) {
+                buffer.position(mark);
+                grow();
+            }
+        }
+    }
+
+    private void writeObject(final EntityComponent component) {
+        try {
+            if (objects == null) {
+                objects = new ObjectOutputStream(objectBytes);
+            }
+            objects.writeUnshared(component);
+        } catch (IOException e) {
+            throw new SnapshotException("Unable to write component " + component.getClass().getName(), e);
+        }
+    }
+
+    private void putObjects() {
+        if (objects == null) {
+            ensureCapacity(4);
+            buffer.putInt(0);
+            return;
+        }
+        try {
+            objects.close();
+        } catch (IOException e) {
+            throw new SnapshotException("Unable to write components.", e);
+        }
+        ensureCapacity(4 + objectBytes.size());
+        buffer.putInt(objectBytes.size());
+        buffer.put(objectBytes.toByteArray());
+    }
+
+    /**
+     * Forget the index of every entity removed from all trackers, so the
+     * indices do not grow with every entity ever written.
+     */
+    private void releaseIndices() {
+        for (Object entityId : released) {
+            if (!isTracked(entityId)) {
+                indices.remove(entityId);
+            }
+        }
+        released.clear();
+    }
+
+    private boolean isTracked(final Object entityId) {
+        for (TypeTracker tracker : trackers) {
+            if (tracker.members.containsKey(entityId)) {
+                return true;
+            }
+        }
+        return detached != null && detached.getDetachedEntityIds().contains(entityId);
+    }
+
+    private int getIndex(final Object entityId) {
+        Integer index = indices.get(entityId);
+        if (index == null) {
+            index = nextIndex++;
+            indices.put(entityId, index);
+        }
+        return index;
+    }
+
+    private void ensureCapacity(final int bytes) {
+        while (buffer.remaining() < bytes) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    private static final class TypeTracker {
+
+        private final Class<? extends EntityComponent> componentType;
+        private final EntityResultSet entSet;
+        private final Map<Object, Entity> members = new LinkedHashMap<>();
+        private final Map<Object, EntityComponent> written = new LinkedHashMap<>();
+
+        private TypeTracker(final Class<? extends EntityComponent> componentType, final EntityResultSet entSet) {
+            this.componentType = componentType;
+            this.entSet = entSet;
+        }
+
+        private void update() {
+            EntityResultSet.UpdateProcessor processor = entSet.getUpdateProcessor();
+            for (Entity entity : processor.getRemovedEntities()) {
+                members.remove(entity.getId());
+            }
+            for (Entity entity : processor.getAddedEntities()) {
+                members.put(entity.getId(), entity);
+            }
+            processor.finalizeUpdates();
+        }
+    }
+}
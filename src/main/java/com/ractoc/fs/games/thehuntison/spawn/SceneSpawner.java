@@ -0,0 +1,70 @@
+package com.ractoc.fs.games.thehuntison.spawn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.forgottenspace.es.components.LocationComponent;
+import com.forgottenspace.parsers.entitytemplate.EntityTemplate;
+import com.jme3.asset.AssetManager;
+import com.jme3.scene.SceneGraphVisitor;
+import com.jme3.scene.Spatial;
+
+/**
+ * Creates the entities placed in a scene made with the SceneComposer. Every
+ * spatial with a templateFileName user data entry becomes an entity created from
+ * that template, located at the world transform of the spatial.
+ *
+ * The scene itself is never attached to the scene graph. The spatials in it
+ * only mark where the entities go, the entities are drawn by the
+ * InstancedRenderAppState like all other entities.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class SceneSpawner {
+
+    private static final String TEMPLATE_FILE_NAME = "templateFileName";
+
+    private final AssetManager assetManager;
+    private final TemplateSpawner spawner;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param assetManager The AssetManager to load the scene and the templates
+     *                     with.
+     * @param spawner      The spawner creating the entities.
+     */
+    public SceneSpawner(final AssetManager assetManager, final TemplateSpawner spawner) {
+        this.assetManager = assetManager;
+        this.spawner = spawner;
+    }
+
+    /**
+     * Create the entities placed in the scene.
+     * <p/>
+     * @param scene The path of the j3o scene.
+     * @return The number of entities created.
+     */
+    public int spawn(final String scene) {
+        Spatial root = assetManager.loadModel(scene);
+        root.updateGeometricState();
+        final List<Spatial> placed = new ArrayList<>();
+        root.depthFirstTraversal(new SceneGraphVisitor() {
+            @Override
+            public void visit(final Spatial spatial) {
+                if (spatial.getUserData(TEMPLATE_FILE_NAME) != null) {
+                    placed.add(spatial);
+                }
+            }
+        });
+        for (Spatial spatial : placed) {
+            String templateFileName = spatial.getUserData(TEMPLATE_FILE_NAME);
+            EntityTemplate template = (EntityTemplate) assetManager.loadAsset(templateFileName);
+            spawner.spawn(template, new LocationComponent(spatial.getWorldTranslation().clone(),
+                                                          spatial.getWorldRotation().clone(),
+                                                          spatial.getWorldScale().clone()));
+        }
+        return placed.size();
+    }
+}
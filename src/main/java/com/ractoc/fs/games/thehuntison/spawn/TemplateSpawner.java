@@ -0,0 +1,72 @@
+package com.ractoc.fs.games.thehuntison.spawn;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.Entity;
+import com.forgottenspace.es.EntityComponent;
+import com.forgottenspace.parsers.ParserException;
+import com.forgottenspace.parsers.entitytemplate.EntityTemplate;
+
+/**
+ * Creates entities from an EntityTemplate. The components of the template and
+ * the per entity overrides are merged before the entity is created, so every
+ * entity is created with a single call, with all its components, instead of
+ * being created from the template and then having the overrides added in a
+ * second call. An override replaces the template component of the same type.
+ *
+ * The template components are created anew for every entity, so entities
+ * spawned from the same template never share a component instance.
+ *
+ * The entity system can only create one entity per call, and updates its
+ * storages and result sets for each of them. There is therefore no bulk spawn
+ * here; large waves are spread over the frames by the SpawnQueueAppState.
+ *
+ * @author ractoc
+ * @since 0.2
+ */
+public final class TemplateSpawner {
+
+    private final Entities entities;
+
+    /**
+     * Constructor.
+     * <p/>
+     * @param entities The entities to create the new entities in.
+     */
+    public TemplateSpawner(final Entities entities) {
+        this.entities = entities;
+    }
+
+    /**
+     * Create a single entity.
+     * <p/>
+     * @param template  The template of the entity.
+     * @param overrides The components to add to, or replace in, the template.
+     * @return The new entity.
+     */
+    public Entity spawn(final EntityTemplate template, final EntityComponent... overrides) {
+        return entities.createEntity(merge(template, overrides));
+    }
+
+    private static EntityComponent[] merge(final EntityTemplate template, final EntityComponent[] overrides) {
+        Map<Class<?>, EntityComponent> components = templateComponents(template);
+        for (EntityComponent override : overrides) {
+            components.put(override.getClass(), override);
+        }
+        return components.values().toArray(new EntityComponent[components.size()]);
+    }
+
+    private static Map<Class<?>, EntityComponent> templateComponents(final EntityTemplate template) {
+        if (template.getComponents() == null || template.getComponents().isEmpty()) {
+            throw new ParserException("No components for template " + template);
+        }
+        Map<Class<?>, EntityComponent> components = new LinkedHashMap<>();
+        // every call creates new component instances
+        for (EntityComponent component : template.getComponentsAsArray()) {
+            components.put(component.getClass(), component);
+        }
+        return components;
+    }
+}
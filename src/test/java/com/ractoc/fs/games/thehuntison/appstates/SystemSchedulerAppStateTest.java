@@ -0,0 +1,93 @@
+package com.ractoc.fs.games.thehuntison.appstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AppState;
+import com.jme3.app.state.AppStateManager;
+
+public class SystemSchedulerAppStateTest {
+
+    private AppStateManager stateManager;
+    private Application app;
+    private AppState first;
+    private AppState second;
+    private AppState third;
+    private SystemSchedulerAppState scheduler;
+
+    @Before
+    public void setUp() {
+        stateManager = mock(AppStateManager.class);
+        app = mock(Application.class);
+        first = enabledSystem();
+        second = enabledSystem();
+        third = enabledSystem();
+        scheduler = new SystemSchedulerAppState();
+        scheduler.addSystem(first);
+        scheduler.addSystem(second);
+        scheduler.addSystem(third);
+    }
+
+    @Test
+    public void systemsAreInitializedAndUpdatedInTheOrderTheyWereAdded() {
+        scheduler.initialize(stateManager, app);
+        scheduler.update(0.5f);
+        scheduler.update(0.25f);
+
+        InOrder order = inOrder(first, second, third);
+        order.verify(first).initialize(stateManager, app);
+        order.verify(second).initialize(stateManager, app);
+        order.verify(third).initialize(stateManager, app);
+        order.verify(first).update(0.5f);
+        order.verify(second).update(0.5f);
+        order.verify(third).update(0.5f);
+        order.verify(first).update(0.25f);
+        order.verify(second).update(0.25f);
+        order.verify(third).update(0.25f);
+        assertEquals(Arrays.asList(first, second, third), scheduler.getSystems());
+    }
+
+    @Test
+    public void disabledSystemsAreSkipped() {
+        when(second.isEnabled()).thenReturn(false);
+        scheduler.initialize(stateManager, app);
+        scheduler.update(0.5f);
+
+        verify(first).update(0.5f);
+        verify(second, never()).update(0.5f);
+        verify(third).update(0.5f);
+    }
+
+    @Test
+    public void cleanupReachesEverySystem() {
+        scheduler.initialize(stateManager, app);
+        scheduler.cleanup();
+
+        verify(first).cleanup();
+        verify(second).cleanup();
+        verify(third).cleanup();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void systemsCanNotBeAddedAfterInitialization() {
+        scheduler.initialize(stateManager, app);
+        scheduler.addSystem(enabledSystem());
+    }
+
+    private static AppState enabledSystem() {
+        AppState system = mock(AppState.class);
+        when(system.isEnabled()).thenReturn(true);
+        return system;
+    }
+}
@@ -0,0 +1,78 @@
+package com.ractoc.fs.games.thehuntison.assets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.ModelKey;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+
+public class ModelCacheTest {
+
+    private static final String MODEL = "Models/Plane1.j3o";
+
+    private AssetManager assetManager;
+    private ModelCache cache;
+
+    @Before
+    public void setUp() {
+        assetManager = mock(AssetManager.class);
+        when(assetManager.loadModel(MODEL)).thenReturn(new Node("model"));
+        cache = new ModelCache(assetManager);
+    }
+
+    @Test
+    public void secondAcquireIsServedFromTheCache() {
+        Spatial first = cache.acquire(MODEL);
+        Spatial second = cache.acquire(MODEL);
+
+        assertNotSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getReferenceCount(MODEL));
+        verify(assetManager, times(1)).loadModel(MODEL);
+    }
+
+    @Test
+    public void releaseToZeroRemovesTheModel() {
+        cache.acquire(MODEL);
+        cache.acquire(MODEL);
+
+        cache.release(MODEL);
+        assertEquals(1, cache.getReferenceCount(MODEL));
+        assertEquals(1, cache.getSize());
+        verify(assetManager, never()).deleteFromCache(new ModelKey(MODEL));
+
+        cache.release(MODEL);
+        assertEquals(0, cache.getReferenceCount(MODEL));
+        assertEquals(0, cache.getSize());
+        verify(assetManager).deleteFromCache(new ModelKey(MODEL));
+    }
+
+    @Test
+    public void acquireAfterReleaseToZeroLoadsAgain() {
+        cache.acquire(MODEL);
+        cache.release(MODEL);
+
+        cache.acquire(MODEL);
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getReferenceCount(MODEL));
+        verify(assetManager, times(2)).loadModel(MODEL);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseWithoutAcquireFails() {
+        cache.release(MODEL);
+    }
+}
@@ -0,0 +1,116 @@
+package com.ractoc.fs.games.thehuntison.replay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.forgottenspace.es.components.Controls;
+
+public class InputJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.newFile("session.ij").toPath();
+    }
+
+    @Test
+    public void journalRoundTrips() throws IOException {
+        try (InputJournalWriter writer = new InputJournalWriter(file)) {
+            writer.addAction(Controls.MOVE_FORWARD, true);
+            writer.addAction(Controls.SHOOT_MAIN, true);
+            writer.endTick(0.016f, 3);
+            writer.endTick(0.017f, 0);
+            writer.addAction(Controls.MOVE_FORWARD, false);
+            writer.endTick(0.015f, 1);
+        }
+
+        InputJournal journal = InputJournal.load(file);
+
+        assertEquals(3, journal.getTickCount());
+        assertEquals(0.016f, journal.getTimePerFrame(0), 0f);
+        assertEquals(0.017f, journal.getTimePerFrame(1), 0f);
+        assertEquals(3, journal.getSpawnCount(0));
+        assertEquals(0, journal.getSpawnCount(1));
+        assertEquals(1, journal.getSpawnCount(2));
+        byte[] actions = journal.getActions(0);
+        assertEquals(2, actions.length);
+        assertEquals(Controls.MOVE_FORWARD, InputJournal.decodeControl(actions[0]));
+        assertTrue(InputJournal.decodePressed(actions[0]));
+        assertEquals(Controls.SHOOT_MAIN, InputJournal.decodeControl(actions[1]));
+        assertEquals(0, journal.getActions(1).length);
+        assertEquals(Controls.MOVE_FORWARD, InputJournal.decodeControl(journal.getActions(2)[0]));
+        assertFalse(InputJournal.decodePressed(journal.getActions(2)[0]));
+    }
+
+    @Test
+    public void tickWithMoreThan127ActionsRoundTrips() throws IOException {
+        try (InputJournalWriter writer = new InputJournalWriter(file)) {
+            for (int i = 0; i < 200; i++) {
+                writer.addAction(Controls.ROTATE_LEFT, i % 2 == 0);
+            }
+            writer.endTick(0.016f, 0);
+            writer.endTick(0.016f, 2);
+        }
+
+        InputJournal journal = InputJournal.load(file);
+
+        assertEquals(2, journal.getTickCount());
+        assertEquals(200, journal.getActions(0).length);
+        assertEquals(2, journal.getSpawnCount(1));
+    }
+
+    @Test
+    public void truncatedTickIsIgnored() throws IOException {
+        try (InputJournalWriter writer = new InputJournalWriter(file)) {
+            writer.addAction(Controls.STRAFE_LEFT, true);
+            writer.endTick(0.016f, 0);
+            writer.addAction(Controls.STRAFE_LEFT, false);
+            writer.addAction(Controls.STRAFE_RIGHT, true);
+            writer.endTick(0.016f, 0);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        InputJournal journal = InputJournal.load(file);
+
+        assertEquals(1, journal.getTickCount());
+        assertArrayEquals(new byte[] {InputJournal.encodeAction(Controls.STRAFE_LEFT, true)}, journal.getActions(0));
+    }
+
+    @Test
+    public void emptyJournalReplaysAtDefaultRate() throws IOException {
+        new InputJournalWriter(file).close();
+        InputJournal journal = InputJournal.load(file);
+        ReplayTimer timer = new ReplayTimer(journal);
+
+        timer.update();
+
+        assertEquals(0, journal.getTickCount());
+        assertEquals(1f / 60f, timer.getTimePerFrame(), 0f);
+        assertTrue(timer.isFinished());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherFileIsRejected() throws IOException {
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        InputJournal.load(file);
+    }
+}
@@ -0,0 +1,171 @@
+package com.ractoc.fs.games.thehuntison.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.Entity;
+import com.forgottenspace.es.components.LocationComponent;
+
+public class EntityCommandQueueTest {
+
+    private Entities entities;
+    private List<Integer> applied;
+
+    @Before
+    public void setUp() {
+        entities = mock(Entities.class);
+        applied = new ArrayList<>();
+    }
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, new EntityCommandQueue(5).getCapacity());
+        assertEquals(8, new EntityCommandQueue(8).getCapacity());
+        assertEquals(1, new EntityCommandQueue(1).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacityIsRejected() {
+        new EntityCommandQueue(0);
+    }
+
+    @Test
+    public void fullQueueRejectsCommands() {
+        EntityCommandQueue queue = new EntityCommandQueue(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(record(i)));
+        }
+        assertFalse(queue.offer(record(4)));
+        assertEquals(1, queue.getRejectedCount());
+        assertEquals(5, queue.getOfferedCount());
+        assertEquals(4, queue.size());
+
+        assertEquals(4, queue.drainTo(entities));
+        assertEquals(4, queue.getHighWatermark());
+        assertTrue(queue.offer(record(5)));
+        assertEquals(1, queue.drainTo(entities));
+        assertEquals(list(0, 1, 2, 3, 5), applied);
+    }
+
+    @Test
+    public void commandsKeepTheirOrderWhenWrappingAround() {
+        EntityCommandQueue queue = new EntityCommandQueue(4);
+        List<Integer> expected = new ArrayList<>();
+        int next = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                expected.add(next);
+                assertTrue(queue.offer(record(next++)));
+            }
+            assertEquals(3, queue.drainTo(entities));
+        }
+        assertEquals(expected, applied);
+        assertEquals(30, queue.getAppliedCount());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void drainOfEmptyQueueAppliesNothing() {
+        assertEquals(0, new EntityCommandQueue(4).drainTo(entities));
+    }
+
+    @Test
+    public void allCommandsOfMultipleProducersAreAppliedInProducerOrder() throws InterruptedException {
+        final int producers = 4;
+        final int commandsPerProducer = 20000;
+        final EntityCommandQueue queue = new EntityCommandQueue(64);
+        final int[] lastApplied = new int[producers];
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(producers);
+        final List<String> failures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            lastApplied[p] = -1;
+            final int producer = p;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < commandsPerProducer; i++) {
+                            final int sequence = i;
+                            EntityCommand command = new EntityCommand() {
+                                @Override
+                                public void apply(final Entities entities) {
+                                    // only called from the draining thread
+                                    if (lastApplied[producer] != sequence - 1) {
+                                        failures.add("producer " + producer + " applied " + sequence
+                                                     + " after " + lastApplied[producer]);
+                                    }
+                                    lastApplied[producer] = sequence;
+                                }
+                            };
+                            while (!queue.offer(command)) {
+                                Thread.yield();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        start.countDown();
+        long total = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (total < producers * commandsPerProducer && System.nanoTime() < deadline) {
+            total += queue.drainTo(entities);
+        }
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+
+        assertEquals(producers * commandsPerProducer, total);
+        assertEquals(total, queue.getAppliedCount());
+        assertEquals(queue.getOfferedCount() - queue.getRejectedCount(), total);
+        assertTrue(failures.toString(), failures.isEmpty());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(commandsPerProducer - 1, lastApplied[p]);
+        }
+    }
+
+    @Test
+    public void removeComponentsRemovesEveryType() {
+        EntityCommandQueue queue = new EntityCommandQueue(4);
+        Entity entity = mock(Entity.class);
+        assertTrue(queue.removeComponents(entity, LocationComponent.class));
+        queue.drainTo(entities);
+        verify(entities).removeComponentsFromEntity(entity, LocationComponent.class);
+    }
+
+    private EntityCommand record(final int value) {
+        return new EntityCommand() {
+            @Override
+            public void apply(final Entities entities) {
+                applied.add(value);
+            }
+        };
+    }
+
+    private static List<Integer> list(final Integer... values) {
+        List<Integer> list = new ArrayList<>();
+        for (Integer value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,75 @@
+package com.ractoc.fs.games.thehuntison.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jme3.input.InputManager;
+import com.jme3.input.KeyInput;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.KeyTrigger;
+import com.jme3.input.dummy.DummyMouseInput;
+import com.jme3.input.event.KeyInputEvent;
+
+public class QueuedKeyInputTest {
+
+    private QueuedKeyInput keyInput;
+    private InputManager inputManager;
+    private List<String> actions;
+
+    @Before
+    public void setUp() {
+        keyInput = new QueuedKeyInput();
+        keyInput.initialize();
+        DummyMouseInput mouseInput = new DummyMouseInput();
+        mouseInput.initialize();
+        inputManager = new InputManager(mouseInput, keyInput, null, null);
+        inputManager.addMapping("shoot", new KeyTrigger(KeyInput.KEY_SPACE));
+        actions = new ArrayList<>();
+        inputManager.addListener(new ActionListener() {
+            @Override
+            public void onAction(final String name, final boolean isPressed, final float tpf) {
+                actions.add(name + (isPressed ? " pressed" : " released"));
+            }
+        }, "shoot");
+    }
+
+    @Test
+    public void keyPressFromAnotherThreadIsDispatchedOnUpdate() throws InterruptedException {
+        Thread renderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                keyInput.offer(new KeyInputEvent(KeyInput.KEY_SPACE, ' ', true, false));
+                keyInput.offer(new KeyInputEvent(KeyInput.KEY_SPACE, ' ', false, false));
+            }
+        });
+        renderThread.start();
+        renderThread.join();
+        assertTrue(actions.isEmpty());
+        assertEquals(2, keyInput.getPendingCount());
+
+        inputManager.update(1f / 60f);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("shoot pressed");
+        expected.add("shoot released");
+        assertEquals(expected, actions);
+        assertEquals(0, keyInput.getPendingCount());
+    }
+
+    @Test
+    public void updateWithoutEventsDispatchesNothing() {
+        inputManager.update(1f / 60f);
+        assertTrue(actions.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void updateBeforeInitializeFails() {
+        new QueuedKeyInput().update();
+    }
+}
@@ -0,0 +1,229 @@
+package com.ractoc.fs.games.thehuntison.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.forgottenspace.es.ComponentTypeCriteria;
+import com.forgottenspace.es.Entities;
+import com.forgottenspace.es.Entity;
+import com.forgottenspace.es.EntityComponent;
+import com.forgottenspace.es.EntityResultSet;
+import com.forgottenspace.es.components.ControlledComponent;
+import com.forgottenspace.es.components.LocationComponent;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+public class WorldSnapshotRoundTripTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Entities writerEntities;
+    private EntityResultSet.UpdateProcessor locationChanges;
+    private EntityResultSet.UpdateProcessor controlledChanges;
+    private Entity ship;
+    private WorldSnapshotWriter writer;
+
+    private Entity restoredShip;
+    private List<String> calls;
+    private List<EntityComponent> restoredComponents;
+    private WorldSnapshotReader reader;
+
+    @Before
+    public void setUp() {
+        ComponentCodecs codecs = new ComponentCodecs();
+        codecs.register(LocationComponent.class, new LocationComponentCodec());
+        codecs.register(ControlledComponent.class, new MarkerComponentCodec<>(ControlledComponent.class));
+
+        writerEntities = mock(Entities.class);
+        locationChanges = mock(EntityResultSet.UpdateProcessor.class);
+        controlledChanges = mock(EntityResultSet.UpdateProcessor.class);
+        EntityResultSet locationSet = mock(EntityResultSet.class);
+        EntityResultSet controlledSet = mock(EntityResultSet.class);
+        when(locationSet.getUpdateProcessor()).thenReturn(locationChanges);
+        when(controlledSet.getUpdateProcessor()).thenReturn(controlledChanges);
+        // the writer queries the component types in the order they were registered
+        when(writerEntities.queryEntities(any(ComponentTypeCriteria.class))).thenReturn(locationSet, controlledSet);
+        ship = mock(Entity.class);
+        doReturn(Long.valueOf(1)).when(ship).getId();
+        writer = new WorldSnapshotWriter(writerEntities, codecs);
+
+        restoredShip = mock(Entity.class);
+        calls = new ArrayList<>();
+        restoredComponents = new ArrayList<>();
+        reader = new WorldSnapshotReader(mock(Entities.class, new RecordingAnswer()), codecs);
+    }
+
+    @Test
+    public void fullSnapshotRestoresAllComponents() {
+        spawnShip(new Vector3f(1, 2, 3));
+
+        reader.restore(writer.encode(true));
+
+        assertEquals(Arrays.asList("createEntity"), calls);
+        assertEquals(2, restoredComponents.size());
+        assertEquals(new Vector3f(1, 2, 3), restoredLocation().getTranslation());
+        assertTrue(restoredComponents.get(1) instanceof ControlledComponent);
+    }
+
+    @Test
+    public void deltaOnlyContainsChangedAndRemovedComponents() {
+        spawnShip(new Vector3f(1, 2, 3));
+        reader.restore(writer.encode(true));
+        calls.clear();
+        restoredComponents.clear();
+
+        setLocation(new Vector3f(4, 5, 6));
+        changes(locationChanges, Collections.<Entity>emptyList(), Collections.<Entity>emptyList());
+        changes(controlledChanges, Collections.<Entity>emptyList(), Collections.singletonList(ship));
+        reader.restore(writer.encode(false));
+
+        assertEquals(Arrays.asList("addComponentsToEntity", "removeComponentsFromEntity"), calls);
+        assertEquals(new Vector3f(4, 5, 6), restoredLocation().getTranslation());
+
+        calls.clear();
+        changes(controlledChanges, Collections.<Entity>emptyList(), Collections.<Entity>emptyList());
+        reader.restore(writer.encode(false));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void entityLosingItsLastComponentIsDestroyed() {
+        spawnShip(new Vector3f(1, 2, 3));
+        reader.restore(writer.encode(true));
+        calls.clear();
+
+        changes(locationChanges, Collections.<Entity>emptyList(), Collections.singletonList(ship));
+        changes(controlledChanges, Collections.<Entity>emptyList(), Collections.singletonList(ship));
+        reader.restore(writer.encode(false));
+
+        assertEquals(Arrays.asList("removeComponentsFromEntity", "removeComponentsFromEntity", "destroyEntity"), calls);
+    }
+
+    @Test
+    public void restoreLatestStopsBeforeTruncatedDelta() {
+        Path directory = folder.getRoot().toPath();
+        spawnShip(new Vector3f(1, 2, 3));
+        WorldSnapshotWriter.write(writer.encode(true), directory.resolve("world-00000000.snap"));
+        setLocation(new Vector3f(4, 5, 6));
+        changes(locationChanges, Collections.<Entity>emptyList(), Collections.<Entity>emptyList());
+        changes(controlledChanges, Collections.<Entity>emptyList(), Collections.<Entity>emptyList());
+        ByteBuffer delta = writer.encode(false);
+        delta.limit(delta.limit() / 2);
+        WorldSnapshotWriter.write(delta, directory.resolve("world-00000001.snap"));
+
+        assertTrue(reader.restoreLatest(directory));
+
+        assertEquals(Arrays.asList("createEntity"), calls);
+        assertEquals(new Vector3f(1, 2, 3), restoredLocation().getTranslation());
+    }
+
+    @Test
+    public void restoreLatestFallsBackToOlderFullSnapshot() {
+        Path directory = folder.getRoot().toPath();
+        spawnShip(new Vector3f(1, 2, 3));
+        WorldSnapshotWriter.write(writer.encode(true), directory.resolve("world-00000000.snap"));
+        changes(locationChanges, Collections.<Entity>emptyList(), Collections.<Entity>emptyList());
+        changes(controlledChanges, Collections.<Entity>emptyList(), Collections.<Entity>emptyList());
+        ByteBuffer corrupt = writer.encode(true);
+        corrupt.limit(10);
+        WorldSnapshotWriter.write(corrupt, directory.resolve("world-00000001.snap"));
+
+        assertTrue(reader.restoreLatest(directory));
+
+        assertEquals(Arrays.asList("createEntity"), calls);
+    }
+
+    @Test
+    public void emptyDirectoryRestoresNothing() {
+        assertFalse(reader.restoreLatest(folder.getRoot().toPath()));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test(expected = SnapshotException.class)
+    public void otherVersionIsRejected() {
+        spawnShip(new Vector3f(1, 2, 3));
+        ByteBuffer snapshot = writer.encode(true);
+        snapshot.putShort(4, (short) (WorldSnapshotWriter.VERSION + 1));
+        reader.restore(snapshot);
+    }
+
+    @Test(expected = SnapshotException.class)
+    public void deltaWithoutFullSnapshotIsRejected() {
+        spawnShip(new Vector3f(1, 2, 3));
+        writer.encode(true);
+        changes(locationChanges, Collections.<Entity>emptyList(), Collections.<Entity>emptyList());
+        changes(controlledChanges, Collections.<Entity>emptyList(), Collections.<Entity>emptyList());
+        reader.restore(writer.encode(false));
+    }
+
+    private void spawnShip(final Vector3f translation) {
+        setLocation(translation);
+        when(writerEntities.loadComponentForEntity(ship, ControlledComponent.class)).thenReturn(new ControlledComponent());
+        changes(locationChanges, Collections.singletonList(ship), Collections.<Entity>emptyList());
+        changes(controlledChanges, Collections.singletonList(ship), Collections.<Entity>emptyList());
+    }
+
+    private void setLocation(final Vector3f translation) {
+        when(writerEntities.loadComponentForEntity(ship, LocationComponent.class))
+                .thenReturn(new LocationComponent(translation, new Quaternion(), new Vector3f(1, 1, 1)));
+    }
+
+    private static void changes(final EntityResultSet.UpdateProcessor processor,
+                                final List<Entity> added, final List<Entity> removed) {
+        when(processor.getAddedEntities()).thenReturn(added);
+        when(processor.getRemovedEntities()).thenReturn(removed);
+    }
+
+    private LocationComponent restoredLocation() {
+        for (EntityComponent component : restoredComponents) {
+            if (component instanceof LocationComponent) {
+                return (LocationComponent) component;
+            }
+        }
+        throw new AssertionError("No LocationComponent restored.");
+    }
+
+    /**
+     * Records the calls the reader makes on the entities, together with the
+     * components passed along.
+     */
+    private final class RecordingAnswer implements Answer<Object> {
+
+        @Override
+        public Object answer(final InvocationOnMock invocation) throws Throwable {
+            calls.add(invocation.getMethod().getName());
+            for (Object argument : invocation.getArguments()) {
+                if (argument instanceof EntityComponent) {
+                    restoredComponents.add((EntityComponent) argument);
+                } else if (argument instanceof EntityComponent[]) {
+                    restoredComponents.addAll(Arrays.asList((EntityComponent[]) argument));
+                }
+            }
+            if ("createEntity".equals(invocation.getMethod().getName())) {
+                return restoredShip;
+            }
+            return Mockito.RETURNS_DEFAULTS.answer(invocation);
+        }
+    }
+}